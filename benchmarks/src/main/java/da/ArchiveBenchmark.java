@@ -0,0 +1,96 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of the history of an employee during {@code periodDays} days of the first of two years,
+ * 500 employees with 2 shifts a day: read from the {@link AttendanceArchive} versus from the DB.
+ * See {@link ArchiveRoundTrip} for the check that both give the same history.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class ArchiveBenchmark {
+	private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	@State(Scope.Benchmark)
+	public static class Database {
+		@Param({"true", "false"})
+		public boolean archived;
+
+		private Path dir;
+		private SyntheticData data;
+		private long before;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			dir = SyntheticDatabase.create(0);
+			data = SyntheticData.generate(500, 730, 2, 1);
+			before = data.getFrom() + 365 * DAY_MILLIS;
+			if (archived) {
+				try (AttendanceDAO dao = new AttendanceDAO()) {
+					AttendanceDAO.useArchive(AttendanceArchive.export(dao, dir.resolve("attendance.archive"), before));
+				}
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			AttendanceDAO.useArchive(null);
+			SyntheticDatabase.delete(dir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Session {
+		@Param({"7", "365"})
+		public int periodDays;
+
+		private AttendanceDAO dao;
+		private long[] employeeIds;
+		private final Random rnd = new Random(1);
+		private long from;
+		private long to;
+
+		@Setup(Level.Trial)
+		public void setUp(Database db) {
+			dao = new AttendanceDAO();
+			employeeIds = db.data.getEmployeeIds();
+			to = db.before;
+			from = to - periodDays * DAY_MILLIS;
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+		}
+	}
+
+	@Benchmark
+	public long history(Session s) {
+		long[] worked = {0};
+		s.dao.forEachEmployeeAttendanceBetween(s.employeeIds[s.rnd.nextInt(s.employeeIds.length)], s.from, s.to,
+				AttendanceDAO.DEFAULT_FETCH_SIZE, (id, employeeId, checkedIn, checkedOut) -> worked[0] += checkedOut - checkedIn);
+		return worked[0];
+	}
+}
@@ -0,0 +1,119 @@
+package da;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the history read through an {@link AttendanceArchive} is the same as read from the DB alone:
+ * <pre>
+ *     java -cp target/benchmarks.jar da.ArchiveRoundTrip [&lt;employees&gt; [&lt;days&gt;]]
+ * </pre>
+ * A DB is generated by {@link SyntheticData} in a temporary directory, with a few shifts left open long ago,
+ * and the first half of the days is exported. The history of each employee is compared over the periods
+ * before, across and after the cutoff, then once more after one of the stale shifts is checked out.
+ * <p>
+ * Exits with {@value #EXIT_MISMATCH} if a history differs, and with {@value #EXIT_USAGE} if the arguments are invalid.
+ * @author danis.tazeev@gmail.com
+ */
+public final class ArchiveRoundTrip {
+	private static final int EXIT_MISMATCH = 1;
+	private static final int EXIT_USAGE = 2;
+	private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+	private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private ArchiveRoundTrip() { throw new AssertionError(); }
+
+	public static void main(String... args) throws IOException {
+		int employees;
+		int days;
+		try {
+			employees = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+			days = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+			if (args.length > 2 || employees < 6 || days < 4)
+				throw new IllegalArgumentException();
+		} catch (IllegalArgumentException ex) {
+			System.err.printf("Usage: java -cp benchmarks.jar %s [<employees, at least 6> [<days, at least 4>]]%n",
+					ArchiveRoundTrip.class.getName());
+			System.exit(EXIT_USAGE);
+			return;
+		}
+
+		Path dir = SyntheticDatabase.create(0);
+		int mismatches;
+		try {
+			SyntheticData data = SyntheticData.generate(employees, days, 2, 1);
+			long[] ids = data.getEmployeeIds();
+			long before = data.getFrom() + days / 2 * DAY_MILLIS;
+			// the odd employees are not checked in by the generator; leave a few of them checked in since the first day
+			long[] stale = {ids[1], ids[3], ids[5]};
+			try (AttendanceDAO dao = new AttendanceDAO()) {
+				for (long employeeId : stale)
+					dao.checkIn(employeeId, data.getFrom() + 22 * HOUR_MILLIS);
+			}
+
+			AttendanceArchive archive;
+			try (AttendanceDAO dao = new AttendanceDAO()) {
+				archive = AttendanceArchive.export(dao, dir.resolve("attendance.archive"), before);
+			}
+			if (archive.getCutoff() != before) {
+				System.out.printf("The cutoff %d is not the requested %d%n", archive.getCutoff(), before);
+				System.exit(EXIT_MISMATCH);
+			}
+			System.out.printf("%d records archived%n", archive.size());
+
+			long[][] periods = {
+					{data.getFrom(), data.getTo()},
+					{data.getFrom() + DAY_MILLIS, before},
+					{before - 3 * DAY_MILLIS, before + 3 * DAY_MILLIS},
+					{before, data.getTo() + DAY_MILLIS},
+			};
+			mismatches = compare(archive, ids, periods);
+			try (AttendanceDAO dao = new AttendanceDAO()) {
+				dao.checkOut(stale[0], System.currentTimeMillis());
+			}
+			mismatches += compare(archive, stale, periods);
+		} finally {
+			AttendanceDAO.useArchive(null);
+			SyntheticDatabase.delete(dir);
+		}
+		System.out.printf("%d mismatches%n", mismatches);
+		if (mismatches > 0)
+			System.exit(EXIT_MISMATCH);
+	}
+
+	/** @return the number of the histories differing */
+	private static int compare(AttendanceArchive archive, long[] employeeIds, long[][] periods) {
+		int mismatches = 0;
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			for (long employeeId : employeeIds) {
+				for (long[] period : periods) {
+					AttendanceDAO.useArchive(null);
+					List<String> expected = history(dao, employeeId, period[0], period[1]);
+					AttendanceDAO.useArchive(archive);
+					List<String> actual = history(dao, employeeId, period[0], period[1]);
+					if (!expected.equals(actual)) {
+						mismatches++;
+						System.out.printf("Employee %d during [%d, %d): DB %s, archive %s%n",
+								employeeId, period[0], period[1], expected, actual);
+					}
+				}
+			}
+		}
+		return mismatches;
+	}
+
+	/** @return the attendance ordered by {@code id} since the archive pushes its part in another order */
+	private static List<String> history(AttendanceDAO dao, long employeeId, long from, long to) {
+		List<long[]> rows = new ArrayList<>();
+		dao.forEachEmployeeAttendanceBetween(employeeId, from, to, AttendanceDAO.DEFAULT_FETCH_SIZE,
+				(id, empId, checkedIn, checkedOut) -> rows.add(new long[] {id, empId, checkedIn, checkedOut}));
+		rows.sort((a, b) -> Long.compare(a[0], b[0]));
+		List<String> result = new ArrayList<>(rows.size());
+		for (long[] row : rows)
+			result.add(row[0] + ":" + row[1] + ":" + row[2] + ":" + row[3]);
+		return result;
+	}
+}
@@ -0,0 +1,76 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import shared.Logging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of a check in followed by a check out while their log lines are written to a file,
+ * either on the calling thread or through the async appender.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CheckInLoggingBenchmark {
+	@State(Scope.Thread)
+	public static class Session {
+		private AttendanceDAO dao;
+		private long[] employeeIds;
+		private int next = 1;
+		private long timestamp;
+
+		@Setup(Level.Trial)
+		public void setUp(SyntheticDatabase db) {
+			dao = new AttendanceDAO();
+			employeeIds = db.data.getEmployeeIds();
+			timestamp = System.currentTimeMillis();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+			Logging.shutdown();
+		}
+
+		/** @return the next of the employees not checked in by the generator, i.e. the odd ones */
+		private long nextEmployeeId() {
+			long id = employeeIds[next];
+			next += 2;
+			if (next >= employeeIds.length)
+				next = 1;
+			return id;
+		}
+	}
+
+	private static void checkInAndOut(Session s) {
+		long employeeId = s.nextEmployeeId();
+		s.dao.checkIn(employeeId, s.timestamp += 1000);
+		s.dao.checkOut(employeeId, s.timestamp += 1000);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"-Dlogback.configurationFile=logback-file.xml", "-Dtrial.log.sync=true"})
+	public void syncLogging(Session s) {
+		checkInAndOut(s);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-file.xml")
+	public void asyncLogging(Session s) {
+		checkInAndOut(s);
+	}
+}
@@ -0,0 +1,64 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of a check in followed by a check out, each committed on its own.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class CheckInOutBenchmark {
+	@State(Scope.Thread)
+	public static class Session {
+		private AttendanceDAO dao;
+		private long[] employeeIds;
+		private int next = 1;
+		private long timestamp;
+
+		@Setup(Level.Trial)
+		public void setUp(SyntheticDatabase db) {
+			dao = new AttendanceDAO();
+			employeeIds = db.data.getEmployeeIds();
+			// later than any generated attendance
+			timestamp = System.currentTimeMillis();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+		}
+
+		/** @return the next of the employees not checked in by the generator, i.e. the odd ones */
+		private long nextEmployeeId() {
+			long id = employeeIds[next];
+			next += 2;
+			if (next >= employeeIds.length)
+				next = 1;
+			return id;
+		}
+	}
+
+	@Benchmark
+	public void checkInAndOut(Session s) {
+		long employeeId = s.nextEmployeeId();
+		s.dao.checkIn(employeeId, s.timestamp += 1000);
+		s.dao.checkOut(employeeId, s.timestamp += 1000);
+	}
+}
@@ -0,0 +1,104 @@
+package da;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The all-employees attendance of the last {@code periodDays} days of 10k employees with 2 shifts a day, as
+ * {@link AttendanceDTO}s or as {@link AttendanceColumns}. The heap the result retains is reported by the
+ * {@code footprint} benchmark as the {@code retainedKB} secondary result; run with {@code -prof gc} to see
+ * the allocation per call as well.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class ColumnarFootprintBenchmark {
+	@State(Scope.Benchmark)
+	public static class Database {
+		@Param({"1", "30"})
+		public int periodDays;
+
+		@Param({"dto", "columnar"})
+		public String layout;
+
+		private Path dir;
+		private long from;
+		private long to;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			dir = SyntheticDatabase.create(0);
+			SyntheticData data = SyntheticData.generate(10_000, 30, 2, 1);
+			to = data.getTo();
+			from = to - TimeUnit.DAYS.toMillis(periodDays);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			SyntheticDatabase.delete(dir);
+		}
+
+		private Object select(AttendanceDAO dao) {
+			return "dto".equals(layout)
+					? dao.selectAllEmployeesAttendanceBetween(from, to)
+					: dao.selectAllEmployeesAttendanceColumnsBetween(from, to);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Session {
+		private AttendanceDAO dao;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			dao = new AttendanceDAO();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+		public long retainedKB;
+	}
+
+	@Benchmark
+	public Object select(Database db, Session s) {
+		return db.select(s.dao);
+	}
+
+	/** Run once, since JMH sums the secondary results over the iterations */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	public Object footprint(Database db, Session s, Footprint f) {
+		long before = HeapProbe.usedAfterGc();
+		Object result = db.select(s.dao);
+		f.retainedKB = (HeapProbe.usedAfterGc() - before) / 1024;
+		return result;
+	}
+}
@@ -0,0 +1,139 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of readers and check-in writers running together, each operation on a DAO of its own as the UI
+ * tasks do: on the single connection, which the DAOs take in turn, versus on the pool. The readers fetch the daily
+ * report of a random day and the weekly history of a random employee; the writers check employees in and out.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class ConnectionModeBenchmark {
+	private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	@State(Scope.Benchmark)
+	public static class Database {
+		/** {@code 0} for the single connection */
+		@Param({"0", "4"})
+		public int poolSize;
+
+		@Param({"1000"})
+		public int employees;
+
+		@Param({"30"})
+		public int days;
+
+		private Path dir;
+		private SyntheticData data;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			dir = SyntheticDatabase.create(poolSize);
+			data = SyntheticData.generate(employees, days, 2, 1);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			SyntheticDatabase.delete(dir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Reader {
+		private SplittableRandom rnd;
+
+		@Setup(Level.Trial)
+		public void setUp(ThreadParams params) {
+			rnd = new SplittableRandom(params.getThreadIndex());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Writer {
+		/** The employees not checked in by the generator, split among the writers */
+		private long[] employeeIds;
+		private int next;
+		private long timestamp;
+
+		@Setup(Level.Trial)
+		public void setUp(Database db, ThreadParams params) {
+			long[] ids = db.data.getEmployeeIds();
+			int writer = params.getSubgroupThreadIndex();
+			int writers = params.getSubgroupThreadCount();
+			int n = 0;
+			employeeIds = new long[ids.length / 2 / writers + 1];
+			for (int i = 1 + 2 * writer; i < ids.length; i += 2 * writers)
+				employeeIds[n++] = ids[i];
+			employeeIds = Arrays.copyOf(employeeIds, n);
+			// later than any generated attendance
+			timestamp = System.currentTimeMillis();
+		}
+
+		private long nextEmployeeId() {
+			long id = employeeIds[next];
+			if (++next == employeeIds.length)
+				next = 0;
+			return id;
+		}
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public int dailyReport(Database db, Reader r) {
+		long day = db.data.getFrom() + r.rnd.nextInt(db.days) * DAY_MILLIS;
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			return dao.selectAllEmployeesAttendanceColumnsBetween(day, day + DAY_MILLIS).size();
+		}
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public int history(Database db, Reader r) {
+		long[] ids = db.data.getEmployeeIds();
+		long from = db.data.getFrom() + r.rnd.nextInt(Math.max(db.days - 7, 1)) * DAY_MILLIS;
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			return dao.selectEmployeeAttendanceBetween(ids[r.rnd.nextInt(ids.length)], from, from + 7 * DAY_MILLIS).length;
+		}
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(2)
+	public void checkInAndOut(Writer w) {
+		long employeeId = w.nextEmployeeId();
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			dao.checkIn(employeeId, w.timestamp += 1000);
+		}
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			dao.checkOut(employeeId, w.timestamp += 1000);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package da;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the heap of the benchmark JVM. The peak is the largest heap left in use by a collection, i.e. the most
+ * the measured code kept reachable at once; the usage before a collection depends on the sizing of the young
+ * generation rather than on the code.
+ * @author danis.tazeev@gmail.com
+ */
+final class HeapProbe {
+	private static final Set<String> heapPools = new HashSet<>();
+	private static final AtomicLong peak = new AtomicLong();
+
+	static {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				heapPools.add(pool.getName());
+		}
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			((NotificationEmitter)gc).addNotificationListener((n, handback) -> {
+				if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType()))
+					return;
+				Map<String, MemoryUsage> before = GarbageCollectionNotificationInfo
+						.from((CompositeData)n.getUserData()).getGcInfo().getMemoryUsageBeforeGc();
+				long used = 0;
+				for (Map.Entry<String, MemoryUsage> e : before.entrySet()) {
+					if (heapPools.contains(e.getKey()))
+						used += e.getValue().getUsed();
+				}
+				peak.accumulateAndGet(used, Math::max);
+			}, null, null);
+		}
+	}
+
+	private HeapProbe() { throw new AssertionError(); }
+
+	/** @return the heap used by the live objects */
+	static long usedAfterGc() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		awaitNotifications();
+		return used();
+	}
+
+	private static long used() { return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(); }
+
+	/** The notifications of the collections are delivered asynchronously */
+	private static void awaitNotifications() {
+		try {
+			TimeUnit.MILLISECONDS.sleep(200);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+	}
+
+	/**
+	 * Collects the garbage and starts tracking the peak.
+	 * @return the heap used by the live objects, to subtract from the {@link #stop peak}
+	 */
+	static long start() {
+		long used = usedAfterGc();
+		peak.set(used);
+		return used;
+	}
+
+	/** @return the peak heap usage since {@link #start} */
+	static long stop() {
+		awaitNotifications();
+		return peak.get();
+	}
+}
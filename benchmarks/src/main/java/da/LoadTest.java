@@ -0,0 +1,332 @@
+package da;
+
+import shared.Histogram;
+import shared.Logging;
+import shared.Metrics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the DAO layer the way a fleet of check-in terminals does, against a local H2 file:
+ * <pre>
+ *     java -cp target/benchmarks.jar da.LoadTest --terminals 20 --duration-secs 120
+ * </pre>
+ * Checks and reports arrive at random (Poisson) at the configured rates, which are multiplied by the burst
+ * factor during the first seconds of each burst period, like at a shift change. An arrival is dispatched to
+ * a random terminal, which serves its arrivals one by one, so the latency is measured from the arrival
+ * and includes the time spent waiting for the terminal. The DB is generated by {@link SyntheticData}
+ * unless it already exists.
+ * <p>
+ * Exits with {@value #EXIT_SLO_BREACHED} if an SLO is breached or any operation has failed,
+ * and with {@value #EXIT_USAGE} if the options are invalid.
+ * @author danis.tazeev@gmail.com
+ */
+public final class LoadTest {
+	private static final int EXIT_SLO_BREACHED = 1;
+	private static final int EXIT_USAGE = 2;
+
+	private enum Operation { CHECK, DAILY_REPORT, HISTORY }
+
+	private static final class Arrival {
+		private static final Arrival END = new Arrival(null, 0);
+
+		private final Operation operation;
+		private final long nanos;
+
+		private Arrival(Operation operation, long nanos) {
+			this.operation = operation;
+			this.nanos = nanos;
+		}
+	}
+
+	private static final String[][] OPTIONS = {
+			{"--db", "database/loadtest", "the directory of the H2 file; generated unless it exists"},
+			{"--employees", "1000", "the employees to generate"},
+			{"--days", "30", "the days of attendance to generate"},
+			{"--shifts-per-day", "2", "the shifts per day to generate"},
+			{"--pool-size", "4", "the pooled connections"},
+			{"--terminals", "20", "the terminals serving the arrivals concurrently"},
+			{"--duration-secs", "60", "how long the arrivals come"},
+			{"--checks-per-sec", "20", "the arrival rate of check ins and outs out of bursts"},
+			{"--reports-per-sec", "1", "the arrival rate of daily reports and histories out of bursts"},
+			{"--burst-every-secs", "60", "the period of the bursts"},
+			{"--burst-secs", "10", "how long a burst takes at the start of each period"},
+			{"--burst-factor", "10", "how many times the check rate grows during a burst"},
+			{"--slo-check-p99-millis", "50", "the p99 latency of a check"},
+			{"--slo-report-p99-millis", "1000", "the p99 latency of a report of either kind"},
+	};
+
+	private final Path db;
+	private final int employees;
+	private final int days;
+	private final int shiftsPerDay;
+	private final int poolSize;
+	private final int terminals;
+	private final long durationNanos;
+	private final double checksPerSec;
+	private final double reportsPerSec;
+	private final long burstEveryNanos;
+	private final long burstNanos;
+	private final double burstFactor;
+	private final long sloCheckP99Nanos;
+	private final long sloReportP99Nanos;
+
+	private final Histogram[] latencies = new Histogram[Operation.values().length];
+	private final Histogram connectionWait = new Histogram();
+	private final AtomicLong failures = new AtomicLong();
+	private long[] employeeIds;
+
+	private LoadTest(String[] values) {
+		int i = 0;
+		db = Paths.get(values[i++]);
+		employees = positiveInt(values[i++]);
+		days = positiveInt(values[i++]);
+		shiftsPerDay = positiveInt(values[i++]);
+		poolSize = positiveInt(values[i++]);
+		terminals = positiveInt(values[i++]);
+		durationNanos = TimeUnit.SECONDS.toNanos(positiveInt(values[i++]));
+		checksPerSec = nonNegativeDouble(values[i++]);
+		reportsPerSec = nonNegativeDouble(values[i++]);
+		burstEveryNanos = TimeUnit.SECONDS.toNanos(positiveInt(values[i++]));
+		burstNanos = TimeUnit.SECONDS.toNanos(nonNegativeInt(values[i++]));
+		burstFactor = nonNegativeDouble(values[i++]);
+		sloCheckP99Nanos = TimeUnit.MILLISECONDS.toNanos(positiveInt(values[i++]));
+		sloReportP99Nanos = TimeUnit.MILLISECONDS.toNanos(positiveInt(values[i++]));
+		if (burstFactor < 1)
+			throw new IllegalArgumentException("--burst-factor must be greater or equal to 1");
+		if (burstNanos > burstEveryNanos)
+			throw new IllegalArgumentException("--burst-secs must be less or equal to --burst-every-secs");
+		for (int k = 0; k < latencies.length; k++)
+			latencies[k] = new Histogram();
+	}
+
+	private static int nonNegativeInt(String value) {
+		int n = Integer.parseInt(value);
+		if (n < 0)
+			throw new IllegalArgumentException("Expected non-negative integer. Supplied: " + n);
+		return n;
+	}
+
+	private static int positiveInt(String value) {
+		int n = Integer.parseInt(value);
+		if (n <= 0)
+			throw new IllegalArgumentException("Expected positive integer. Supplied: " + n);
+		return n;
+	}
+
+	private static double nonNegativeDouble(String value) {
+		double d = Double.parseDouble(value);
+		if (!(d >= 0) || Double.isInfinite(d))
+			throw new IllegalArgumentException("Expected non-negative number. Supplied: " + d);
+		return d;
+	}
+
+	private static void printUsage() {
+		System.err.printf("Usage: java -cp benchmarks.jar %s [<option> <value>]...%n", LoadTest.class.getName());
+		for (String[] opt : OPTIONS)
+			System.err.printf("  %-24s %s (default %s)%n", opt[0], opt[2], opt[1]);
+	}
+
+	public static void main(String... args) throws InterruptedException {
+		// logging each call at INFO would dominate the measurements
+		if (System.getProperty("logback.configurationFile") == null)
+			System.setProperty("logback.configurationFile", "logback-benchmarks.xml");
+		String[] values = new String[OPTIONS.length];
+		for (int k = 0; k < OPTIONS.length; k++)
+			values[k] = OPTIONS[k][1];
+		LoadTest test;
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				int k = 0;
+				while (k < OPTIONS.length && !OPTIONS[k][0].equals(args[i]))
+					k++;
+				if (k == OPTIONS.length)
+					throw new IllegalArgumentException("Unknown option: '" + args[i] + "'");
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException("No value for " + args[i]);
+				values[k] = args[i + 1];
+			}
+			test = new LoadTest(values);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			printUsage();
+			System.exit(EXIT_USAGE);
+			return;
+		}
+		boolean met;
+		try {
+			met = test.run();
+		} finally {
+			DAO.terminate();
+		}
+		System.exit(met ? 0 : EXIT_SLO_BREACHED);
+	}
+
+	/** @return {@code true} if the SLOs are met */
+	private boolean run() throws InterruptedException {
+		boolean exists = Files.exists(db.resolve("trial.mv.db"));
+		System.setProperty(DAO.JDBC_URL_PROPERTY, "jdbc:h2:" + db.toAbsolutePath().resolve("trial")
+				+ ";MVCC=TRUE;DB_CLOSE_DELAY=-1");
+		DAO.usePool(new ConnectionPool(poolSize, TimeUnit.SECONDS.toMillis(30), TimeUnit.MINUTES.toMillis(5), 1));
+		if (exists)
+			DbInitializer.initialize();
+		else
+			SyntheticData.generate(employees, days, shiftsPerDay, 1);
+		try (EmployeeDAO dao = new EmployeeDAO()) {
+			EmployeeDTO[] all = dao.selectAllEmployeesOrderedByName();
+			employeeIds = new long[all.length];
+			for (int i = 0; i < all.length; i++)
+				employeeIds[i] = all[i].getId();
+		}
+		// as the application does on start
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			dao.warmUpOpenShifts();
+		}
+
+		List<BlockingQueue<Arrival>> queues = new ArrayList<>(terminals);
+		List<Thread> threads = new ArrayList<>(terminals);
+		for (int t = 0; t < terminals; t++) {
+			BlockingQueue<Arrival> queue = new LinkedBlockingQueue<>();
+			final int terminal = t;
+			Thread thread = new Thread(() -> serve(terminal, queue), "Terminal " + t);
+			queues.add(queue);
+			threads.add(thread);
+			thread.start();
+		}
+		System.out.printf("%d employees, %d terminals, %d pooled connections, %d s%n",
+				employeeIds.length, terminals, poolSize, TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+		long start = System.nanoTime();
+		generateArrivals(start, queues);
+		for (BlockingQueue<Arrival> queue : queues)
+			queue.add(Arrival.END);
+		for (Thread thread : threads)
+			thread.join();
+		return report(System.nanoTime() - start);
+	}
+
+	private boolean inBurst(long elapsedNanos) {
+		return elapsedNanos % burstEveryNanos < burstNanos;
+	}
+
+	/**
+	 * Generates the arrivals at the max rate and keeps each one with the probability of the current rate
+	 * to the max rate, so the arrivals stay Poisson while the rate changes.
+	 */
+	private void generateArrivals(long start, List<BlockingQueue<Arrival>> queues) {
+		Random rnd = new Random(1);
+		double maxRate = checksPerSec * burstFactor + reportsPerSec;
+		if (maxRate == 0) {
+			LockSupport.parkNanos(durationNanos);
+			return;
+		}
+		double elapsed = 0;
+		while (true) {
+			elapsed += -Math.log(1 - rnd.nextDouble()) / maxRate * 1e9;
+			if (elapsed >= durationNanos)
+				return;
+			long nanos = start + (long)elapsed;
+			double checkRate = checksPerSec * (inBurst((long)elapsed) ? burstFactor : 1);
+			double u = rnd.nextDouble() * maxRate;
+			Operation operation;
+			if (u < checkRate)
+				operation = Operation.CHECK;
+			else if (u < checkRate + reportsPerSec)
+				operation = rnd.nextBoolean() ? Operation.DAILY_REPORT : Operation.HISTORY;
+			else
+				continue;
+			for (long wait; (wait = nanos - System.nanoTime()) > 0; )
+				LockSupport.parkNanos(wait);
+			queues.get(rnd.nextInt(queues.size())).add(new Arrival(operation, nanos));
+		}
+	}
+
+	/** Each terminal checks its own employees in and out, so no two terminals race over an employee */
+	private void serve(int terminal, BlockingQueue<Arrival> queue) {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		int own = (employeeIds.length - terminal + terminals - 1) / terminals;
+		try {
+			for (Arrival a; (a = queue.take()) != Arrival.END; ) {
+				try {
+					long t0 = System.nanoTime();
+					try (AttendanceDAO dao = new AttendanceDAO()) {
+						connectionWait.record(System.nanoTime() - t0);
+						long now = System.currentTimeMillis();
+						switch (a.operation) {
+							case CHECK:
+								if (own == 0)
+									break;
+								long employeeId = employeeIds[terminal + rnd.nextInt(own) * terminals];
+								if (dao.hasNotCheckedOutYet(employeeId))
+									dao.checkOut(employeeId, now);
+								else
+									dao.checkIn(employeeId, now);
+								break;
+							case DAILY_REPORT:
+								dao.selectAllEmployeesAttendanceBetween(now - TimeUnit.DAYS.toMillis(1), now);
+								break;
+							case HISTORY:
+								dao.selectEmployeeAttendanceBetween(employeeIds[rnd.nextInt(employeeIds.length)],
+										now - TimeUnit.DAYS.toMillis(30), now);
+								break;
+						}
+					}
+					latencies[a.operation.ordinal()].record(System.nanoTime() - a.nanos);
+				} catch (RuntimeException ex) {
+					failures.incrementAndGet();
+					new Logging(LoadTest.class).warn(ex, "{} failed", a.operation);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+	}
+
+	private static double millis(long nanos) { return nanos / 1e6; }
+
+	private static void print(String name, Histogram h, long elapsedNanos) {
+		System.out.printf("%-16s %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", name, h.getCount(),
+				h.getCount() / (elapsedNanos / 1e9), millis(h.getValueAtPercentile(50)),
+				millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)), millis(h.getMax()));
+	}
+
+	private boolean check(String name, Histogram h, long sloP99Nanos) {
+		long p99 = h.getValueAtPercentile(99);
+		if (p99 <= sloP99Nanos)
+			return true;
+		System.out.printf("SLO breached: %s p99 %.2f ms > %.2f ms%n", name, millis(p99), millis(sloP99Nanos));
+		return false;
+	}
+
+	/** @return {@code true} if the SLOs are met */
+	private boolean report(long elapsedNanos) {
+		Histogram reports = new Histogram();
+		reports.add(latencies[Operation.DAILY_REPORT.ordinal()]);
+		reports.add(latencies[Operation.HISTORY.ordinal()]);
+		System.out.printf("%-16s %8s %10s %10s %10s %10s %10s%n",
+				"operation", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+		print("check", latencies[Operation.CHECK.ordinal()], elapsedNanos);
+		print("daily report", latencies[Operation.DAILY_REPORT.ordinal()], elapsedNanos);
+		print("history", latencies[Operation.HISTORY.ordinal()], elapsedNanos);
+		print("connection wait", connectionWait, elapsedNanos);
+		System.out.printf("failures: %d%n", failures.get());
+		System.out.println("DAO metrics:" + Metrics.dump());
+		boolean met = check("check", latencies[Operation.CHECK.ordinal()], sloCheckP99Nanos);
+		met &= check("report", reports, sloReportP99Nanos);
+		if (failures.get() > 0) {
+			System.out.println("SLO breached: operations failed");
+			met = false;
+		}
+		return met;
+	}
+}
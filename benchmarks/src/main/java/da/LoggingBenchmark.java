@@ -0,0 +1,64 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import shared.Logging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time the calling thread spends on a log line of {@link AttendanceDAO#checkIn} written to a file,
+ * either on the calling thread or through the async appender. Each line is followed by some work,
+ * as in the application, so the async queue is drained rather than filled up and dropping lines.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Thread)
+public class LoggingBenchmark {
+	/** About 20 us of work per line, that is far more than writing a line takes */
+	private static final long WORK_TOKENS = 10_000;
+
+	private final Logging log = new Logging(AttendanceDAO.class);
+	private long employeeId = 1000;
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Logging.shutdown();
+	}
+
+	private void logAndWork() {
+		log.info("checkIn({}, ...)", employeeId++);
+		Blackhole.consumeCPU(WORK_TOKENS);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"-Dlogback.configurationFile=logback-file.xml", "-Dtrial.log.sync=true"})
+	public void syncLogging() {
+		logAndWork();
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-file.xml")
+	public void asyncLogging() {
+		logAndWork();
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-file.xml")
+	public void noLogging() {
+		Blackhole.consumeCPU(WORK_TOKENS);
+	}
+}
@@ -0,0 +1,75 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of telling whether employees have not checked out yet, answered by the DB or from memory.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class OpenShiftBenchmark {
+	@State(Scope.Thread)
+	public static class Session {
+		/** {@code true} to answer from the in-memory registry */
+		@Param({"false", "true"})
+		public boolean warmedUp;
+
+		private AttendanceDAO dao;
+		private long[] employeeIds;
+		private EmployeeDTO[] employees;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(SyntheticDatabase db) {
+			try (EmployeeDAO employeeDAO = new EmployeeDAO()) {
+				employees = employeeDAO.selectAllEmployeesOrderedByName();
+			}
+			dao = new AttendanceDAO();
+			if (warmedUp)
+				dao.warmUpOpenShifts();
+			employeeIds = db.data.getEmployeeIds();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+		}
+
+		/** @return both the employees checked in and not in turn */
+		private long nextEmployeeId() {
+			long id = employeeIds[next];
+			if (++next == employeeIds.length)
+				next = 0;
+			return id;
+		}
+	}
+
+	@Benchmark
+	public boolean hasNotCheckedOutYet(Session s) {
+		return s.dao.hasNotCheckedOutYet(s.nextEmployeeId());
+	}
+
+	@Benchmark
+	public BitSet selectOpenShiftsOfAll(Session s) {
+		return s.dao.selectOpenShiftsOf(s.employees);
+	}
+}
@@ -0,0 +1,105 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of the open-shift lookups answered by the DB, i.e. through the {@code (employee_id, checked_out)}
+ * index, as the attendance table grows from 1M to 20M rows: 10k employees with 4 shifts a day during 25 to 500
+ * days. It is expected to stay flat. Generating the largest DB takes a while and a few GB of disk.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class OpenShiftScalingBenchmark {
+	@State(Scope.Benchmark)
+	public static class Database {
+		@Param({"25", "250", "500"})
+		public int days;
+
+		private Path dir;
+		private SyntheticData data;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			dir = SyntheticDatabase.create(4);
+			data = SyntheticData.generate(10_000, days, 4, 1);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			SyntheticDatabase.delete(dir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Session {
+		private AttendanceDAO dao;
+		private long[] employeeIds;
+		private int next;
+		private int nextOdd = 1;
+		private long timestamp;
+
+		@Setup(Level.Trial)
+		public void setUp(Database db) {
+			// the registry is never warmed up, so every lookup goes to the DB
+			dao = new AttendanceDAO();
+			employeeIds = db.data.getEmployeeIds();
+			// later than any generated attendance
+			timestamp = System.currentTimeMillis();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+		}
+
+		/** @return both the employees checked in and not in turn */
+		private long nextEmployeeId() {
+			long id = employeeIds[next];
+			if (++next == employeeIds.length)
+				next = 0;
+			return id;
+		}
+
+		/** @return the next of the employees not checked in by the generator */
+		private long nextOddEmployeeId() {
+			long id = employeeIds[nextOdd];
+			nextOdd += 2;
+			if (nextOdd >= employeeIds.length)
+				nextOdd = 1;
+			return id;
+		}
+	}
+
+	@Benchmark
+	public boolean hasNotCheckedOutYet(Session s) {
+		return s.dao.hasNotCheckedOutYet(s.nextEmployeeId());
+	}
+
+	/** The check out looks the open attendance up by the same index */
+	@Benchmark
+	public void checkInAndOut(Session s) {
+		long employeeId = s.nextOddEmployeeId();
+		s.dao.checkIn(employeeId, s.timestamp += 1000);
+		s.dao.checkOut(employeeId, s.timestamp += 1000);
+	}
+}
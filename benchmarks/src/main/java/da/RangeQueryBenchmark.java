@@ -0,0 +1,65 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of the attendance range queries over the last {@code periodDays} days.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class RangeQueryBenchmark {
+	@State(Scope.Thread)
+	public static class Session {
+		@Param({"1", "7", "30"})
+		public int periodDays;
+
+		private AttendanceDAO dao;
+		private long[] employeeIds;
+		private final Random rnd = new Random(1);
+		private long from;
+		private long to;
+
+		@Setup(Level.Trial)
+		public void setUp(SyntheticDatabase db) {
+			dao = new AttendanceDAO();
+			employeeIds = db.data.getEmployeeIds();
+			to = db.data.getTo();
+			from = Math.max(to - TimeUnit.DAYS.toMillis(periodDays), db.data.getFrom());
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+		}
+	}
+
+	@Benchmark
+	public AttendanceDTO[] selectEmployeeAttendanceBetween(Session s) {
+		long employeeId = s.employeeIds[s.rnd.nextInt(s.employeeIds.length)];
+		return s.dao.selectEmployeeAttendanceBetween(employeeId, s.from, s.to);
+	}
+
+	@Benchmark
+	public LongObjectMap<AttendanceDTO[]> selectAllEmployeesAttendanceBetween(Session s) {
+		return s.dao.selectAllEmployeesAttendanceBetween(s.from, s.to);
+	}
+}
@@ -0,0 +1,119 @@
+package da;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of the daily summary of an employee during the last {@code periodDays} days: read from the
+ * rollup versus aggregated from the raw attendance, {@code shiftsPerDay} rows a day, as it was done before.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class RollupBenchmark {
+	@State(Scope.Benchmark)
+	public static class Database {
+		@Param({"2", "8"})
+		public int shiftsPerDay;
+
+		private Path dir;
+		private SyntheticData data;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			dir = SyntheticDatabase.create(0);
+			data = SyntheticData.generate(200, 365, shiftsPerDay, 1);
+			try (AttendanceDAO dao = new AttendanceDAO()) {
+				while (dao.rollUp(10_000) == 10_000);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			SyntheticDatabase.delete(dir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Session {
+		@Param({"30", "365"})
+		public int periodDays;
+
+		private AttendanceDAO dao;
+		private long[] employeeIds;
+		private final Random rnd = new Random(1);
+		private long from;
+		private long to;
+
+		@Setup(Level.Trial)
+		public void setUp(Database db) {
+			dao = new AttendanceDAO();
+			employeeIds = db.data.getEmployeeIds();
+			to = db.data.getTo();
+			from = to - TimeUnit.DAYS.toMillis(periodDays);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			dao.close();
+		}
+
+		private long nextEmployeeId() { return employeeIds[rnd.nextInt(employeeIds.length)]; }
+	}
+
+	@Benchmark
+	public DailyAttendanceDTO[] rollup(Session s) {
+		return s.dao.selectEmployeeDailyAttendanceBetween(s.nextEmployeeId(), s.from, s.to);
+	}
+
+	/** The generated shifts neither cross midnight nor overlap, and they come in the order of the check in */
+	@Benchmark
+	public List<DailyAttendanceDTO> raw(Session s) {
+		long employeeId = s.nextEmployeeId();
+		List<DailyAttendanceDTO> result = new ArrayList<>();
+		long[] day = {0, 0, 0, 0, 0}; // midnight, first in, last out, worked, shift count
+		s.dao.forEachEmployeeAttendanceBetween(employeeId, s.from, s.to, AttendanceDAO.DEFAULT_FETCH_SIZE,
+				(id, empId, checkedIn, checkedOut) -> {
+					if (checkedOut == 0)
+						return;
+					long midnight = Instant.ofEpochMilli(checkedIn).atZone(ZoneId.systemDefault()).toLocalDate()
+							.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+					if (midnight != day[0]) {
+						if (day[4] > 0)
+							result.add(new DailyAttendanceDTO(employeeId, day[0], day[1], day[2], day[3], (int)day[4]));
+						day[0] = midnight;
+						day[1] = checkedIn;
+						day[3] = day[4] = 0;
+					}
+					day[2] = checkedOut;
+					day[3] += checkedOut - checkedIn;
+					day[4]++;
+				});
+		if (day[4] > 0)
+			result.add(new DailyAttendanceDTO(employeeId, day[0], day[1], day[2], day[3], (int)day[4]));
+		return result;
+	}
+}
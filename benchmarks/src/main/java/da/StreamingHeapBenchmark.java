@@ -0,0 +1,98 @@
+package da;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The peak heap of reading the attendance of 10k employees during a year, about 7.3M rows: collected into
+ * {@link AttendanceDTO}s versus streamed to a consumer totalling the worked time. The peak live heap is reported
+ * as the {@code peakHeapMB} secondary result, above the heap used by the live objects before the call.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1) // JMH sums the secondary results over the iterations
+@Timeout(time = 2, timeUnit = TimeUnit.HOURS) // the first iteration generates the DB
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Dlogback.configurationFile=logback-benchmarks.xml"})
+public class StreamingHeapBenchmark {
+	private static final long MB = 1024 * 1024;
+
+	@State(Scope.Benchmark)
+	public static class Database {
+		@Param({"10000"})
+		public int employees;
+
+		@Param({"365"})
+		public int days;
+
+		private Path dir;
+		private SyntheticData data;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			dir = SyntheticDatabase.create(0);
+			data = SyntheticData.generate(employees, days, 2, 1);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			SyntheticDatabase.delete(dir);
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Heap {
+		public long peakHeapMB;
+
+		private long baseline;
+
+		@Setup(Level.Invocation)
+		public void start() {
+			baseline = HeapProbe.start();
+		}
+
+		@TearDown(Level.Invocation)
+		public void stop() {
+			peakHeapMB = (HeapProbe.stop() - baseline) / MB;
+		}
+	}
+
+	@Benchmark
+	public LongObjectMap<AttendanceDTO[]> collected(Database db, Heap heap) {
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			return dao.selectAllEmployeesAttendanceBetween(db.data.getFrom(), db.data.getTo());
+		}
+	}
+
+	@Benchmark
+	public long streamed(Database db, Heap heap) {
+		long[] worked = {0};
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			dao.forEachAttendanceBetween(db.data.getFrom(), db.data.getTo(), AttendanceDAO.DEFAULT_FETCH_SIZE,
+					(id, employeeId, checkedIn, checkedOut) -> {
+						if (checkedOut != 0)
+							worked[0] += checkedOut - checkedIn;
+					});
+		}
+		return worked[0];
+	}
+}
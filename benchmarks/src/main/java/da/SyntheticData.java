@@ -0,0 +1,132 @@
+package da;
+
+import shared.FailureException;
+import shared.Logging;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills the DB at {@link DAO#JDBC_URL} with generated employees and their attendance. Each employee works
+ * {@code shiftsPerDay} shifts a day between 8:00 and 20:00 UTC during {@code days} days before today, and every
+ * other employee (the even ones in {@link #getEmployeeIds()}) is still checked in since an hour ago.
+ * @author danis.tazeev@gmail.com
+ */
+public final class SyntheticData {
+	private static final Logging log = new Logging(SyntheticData.class);
+	private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+	private static final int BATCH_SIZE = 1000;
+
+	private final long[] employeeIds;
+	private final long from;
+	private final long to;
+
+	private SyntheticData(long[] employeeIds, long from, long to) {
+		this.employeeIds = employeeIds;
+		this.from = from;
+		this.to = to;
+	}
+
+	/** @return the ids of the generated employees; MUST NOT be modified */
+	public long[] getEmployeeIds() { return employeeIds; }
+
+	/** @return the midnight (UTC) of the first day generated */
+	public long getFrom() { return from; }
+
+	/** @return the midnight (UTC) of today, when the last closed attendance had already been checked out */
+	public long getTo() { return to; }
+
+	/**
+	 * Initializes the DB schema and generates the data. The DB is expected to be empty.
+	 * @param seed makes the generated data reproducible
+	 */
+	public static SyntheticData generate(int employees, int days, int shiftsPerDay, long seed) {
+		if (employees <= 0)
+			throw new IllegalArgumentException("employees must be greater than 0");
+		if (days <= 0)
+			throw new IllegalArgumentException("days must be greater than 0");
+		if (shiftsPerDay <= 0 || shiftsPerDay > 12)
+			throw new IllegalArgumentException("shiftsPerDay must be in [1, 12]");
+		log.info("generate({}, {}, {}, ...)", employees, days, shiftsPerDay);
+		DbInitializer.initialize();
+		long now = System.currentTimeMillis();
+		long to = now - now % DAY_MILLIS;
+		long from = to - days * DAY_MILLIS;
+		try (Connection conn = DriverManager.getConnection(DAO.JDBC_URL)) {
+			conn.setAutoCommit(false);
+			long[] ids = insertEmployees(conn, employees);
+			insertAttendance(conn, ids, from, days, shiftsPerDay, new Random(seed));
+			try (PreparedStatement stmt = conn.prepareStatement("insert into attendance(employee_id, checked_in) values(?, ?)")) {
+				for (int i = 0; i < ids.length; i += 2) {
+					stmt.setLong(1, ids[i]);
+					stmt.setTimestamp(2, new Timestamp(now - HOUR_MILLIS));
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+			}
+			// the rollup picks the closed attendance up from the log
+			try (Statement stmt = conn.createStatement()) {
+				stmt.executeUpdate("insert into attendance_log(attendance_id)"
+						+ " select id from attendance where checked_out is not null order by id");
+			}
+			conn.commit();
+			log.info("generate = success");
+			return new SyntheticData(ids, from, to);
+		} catch (SQLException ex) {
+			throw log.error(new FailureException("DB failure"), Logging.concat("generate = fail", ex));
+		}
+	}
+
+	private static long[] insertEmployees(Connection conn, int employees) throws SQLException {
+		long[] ids = new long[employees];
+		try (PreparedStatement stmt = conn.prepareStatement("insert into employee(name) values(?)",
+				Statement.RETURN_GENERATED_KEYS)) {
+			for (int i = 0; i < employees; i++) {
+				stmt.setString(1, String.format("Сотрудник %07d", i));
+				stmt.executeUpdate();
+				try (ResultSet rs = stmt.getGeneratedKeys()) {
+					rs.next();
+					ids[i] = rs.getLong(1);
+				}
+			}
+		}
+		conn.commit();
+		return ids;
+	}
+
+	private static void insertAttendance(Connection conn, long[] ids, long from, int days, int shiftsPerDay,
+			Random rnd) throws SQLException {
+		long slot = 12 * HOUR_MILLIS / shiftsPerDay;
+		try (PreparedStatement stmt = conn.prepareStatement(
+				"insert into attendance(employee_id, checked_in, checked_out) values(?, ?, ?)")) {
+			int n = 0;
+			for (int d = 0; d < days; d++) {
+				long day = from + d * DAY_MILLIS + 8 * HOUR_MILLIS;
+				for (long id : ids) {
+					for (int s = 0; s < shiftsPerDay; s++) {
+						// a shift starts within the first quarter of its slot and lasts a half to three quarters of it
+						long checkedIn = day + s * slot + (long)(rnd.nextDouble() * slot / 4);
+						long checkedOut = checkedIn + slot / 2 + (long)(rnd.nextDouble() * slot / 4);
+						stmt.setLong(1, id);
+						stmt.setTimestamp(2, new Timestamp(checkedIn));
+						stmt.setTimestamp(3, new Timestamp(checkedOut));
+						stmt.addBatch();
+						if (++n % BATCH_SIZE == 0) {
+							stmt.executeBatch();
+							conn.commit();
+						}
+					}
+				}
+			}
+			stmt.executeBatch();
+		}
+	}
+}
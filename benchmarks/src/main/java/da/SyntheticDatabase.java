@@ -0,0 +1,72 @@
+package da;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A DB generated by {@link SyntheticData} in a temporary directory for a benchmark trial.
+ * Since {@link DAO#JDBC_URL} is read once, each trial MUST run in a fresh fork.
+ * @author danis.tazeev@gmail.com
+ */
+@State(Scope.Benchmark)
+public class SyntheticDatabase {
+	@Param({"100", "1000"})
+	public int employees;
+
+	@Param({"30", "365"})
+	public int days;
+
+	@Param({"2"})
+	public int shiftsPerDay;
+
+	private Path dir;
+	SyntheticData data;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		// the same pool as the application's
+		dir = create(4);
+		data = SyntheticData.generate(employees, days, shiftsPerDay, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		delete(dir);
+	}
+
+	/**
+	 * Points {@link DAO#JDBC_URL} to a new DB in a temporary directory. For the states generating their own data.
+	 * @param poolSize the size of the {@link ConnectionPool} to install; {@code 0} leaves the DAOs on the single connection
+	 * @return the directory to {@link #delete} once the trial is over
+	 */
+	static Path create(int poolSize) throws IOException {
+		Path dir = Files.createTempDirectory("trial-benchmark");
+		String url = "jdbc:h2:" + dir.resolve("trial") + ";MVCC=TRUE;DB_CLOSE_DELAY=-1";
+		System.setProperty(DAO.JDBC_URL_PROPERTY, url);
+		if (!url.equals(DAO.JDBC_URL))
+			throw new IllegalStateException("DAO has been used before the trial; run the benchmarks forked");
+		if (poolSize > 0)
+			DAO.usePool(new ConnectionPool(poolSize, TimeUnit.SECONDS.toMillis(30), TimeUnit.MINUTES.toMillis(5), 1));
+		return dir;
+	}
+
+	/** Closes the connections and deletes the DB {@link #create created} */
+	static void delete(Path dir) throws IOException {
+		DAO.terminate();
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package da;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory report for the benchmarks of the UI models, which need no DB: {@code employees} named like
+ * {@link SyntheticData} does, each with {@code rowsPerEmployee} attendance rows during the day, but every
+ * {@code gap}-th employee has none.
+ * @author danis.tazeev@gmail.com
+ */
+public final class SyntheticReport {
+	private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private final EmployeeDTO[] employees;
+	private final long midnight;
+	private final int rowsPerEmployee;
+	private final int gap;
+
+	public SyntheticReport(int employees, int rowsPerEmployee, int gap) {
+		if (employees <= 0)
+			throw new IllegalArgumentException("employees must be greater than 0");
+		if (rowsPerEmployee <= 0)
+			throw new IllegalArgumentException("rowsPerEmployee must be greater than 0");
+		if (gap <= 1)
+			throw new IllegalArgumentException("gap must be greater than 1");
+		String[] names = new String[employees];
+		for (int i = 0; i < employees; i++)
+			names[i] = String.format("Сотрудник %07d", i);
+		this.employees = employeesNamed(names);
+		long now = System.currentTimeMillis();
+		midnight = now - now % TimeUnit.DAYS.toMillis(1);
+		this.rowsPerEmployee = rowsPerEmployee;
+		this.gap = gap;
+	}
+
+	/** @return the employees with the given names, their ids starting at 1 */
+	public static EmployeeDTO[] employeesNamed(String... names) {
+		EmployeeDTO[] result = new EmployeeDTO[names.length];
+		for (int i = 0; i < names.length; i++)
+			result[i] = new EmployeeDTO(i + 1, names[i]);
+		return result;
+	}
+
+	/** @return a copy, ordered by {@code id} */
+	public EmployeeDTO[] getEmployees() { return employees.clone(); }
+
+	public long getMidnight() { return midnight; }
+
+	private void forEachAttendance(AttendanceConsumer consumer) {
+		long slot = 12 * HOUR_MILLIS / rowsPerEmployee;
+		long id = 0;
+		for (int i = 0; i < employees.length; i++) {
+			if (i % gap == gap - 1)
+				continue;
+			long checkedIn = midnight + 8 * HOUR_MILLIS;
+			for (int r = 0; r < rowsPerEmployee; r++, checkedIn += slot)
+				consumer.accept(++id, employees[i].getId(), checkedIn, checkedIn + slot / 2);
+		}
+	}
+
+	/** @return the report as {@link AttendanceDAO#selectAllEmployeesAttendanceColumnsBetween} returns it */
+	public AttendanceColumns toColumns() {
+		AttendanceColumns.Builder result = new AttendanceColumns.Builder();
+		forEachAttendance(result);
+		return result.build();
+	}
+
+	/** @return the report the way {@code AttendanceDAO} returned it before {@link AttendanceColumns} */
+	public Map<Long, AttendanceDTO[]> toMap() {
+		Map<Long, AttendanceDTO[]> result = new HashMap<>();
+		forEachAttendance((id, employeeId, checkedIn, checkedOut) -> {
+			AttendanceDTO[] attx = result.get(employeeId);
+			attx = attx == null ? new AttendanceDTO[1] : Arrays.copyOf(attx, attx.length + 1);
+			attx[attx.length - 1] = new AttendanceDTO(id, employeeId, checkedIn, checkedOut);
+			result.put(employeeId, attx);
+		});
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+package ui;
+
+import da.AttendanceDTO;
+import da.EmployeeDTO;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * The row index of {@link DailyReportPanel.CustomTableModel} as it was before {@link da.AttendanceColumns}:
+ * the attendance boxed by {@code employeeId}, and each row packed as the employee index in the highest 22 bits
+ * and the attendance index in the lowest 10 bits of an int. Kept for the benchmarks to compare against.
+ * @author danis.tazeev@gmail.com
+ */
+final class LegacyReportModel {
+	private final EmployeesModel employeesModel;
+	private Map<Long, AttendanceDTO[]> data;
+	private int[] index;
+
+	LegacyReportModel(EmployeesModel employeesModel) {
+		assert employeesModel != null;
+		this.employeesModel = employeesModel;
+	}
+
+	void setData(Map<Long, AttendanceDTO[]> data) {
+		this.data = data;
+		buildIndex();
+	}
+
+	private void buildIndex() {
+		EmployeeDTO[] employees = employeesModel.getEmployees();
+		if (employees.length > 0x3FFFFF)
+			throw new IllegalStateException("The length of EmployeeDTO[] is greater than 2^22");
+
+		int dataRowCount = 0;
+		for (AttendanceDTO[] x : data.values())
+			dataRowCount += x.length;
+		int indexLength = employees.length - data.size() + dataRowCount;
+		index = new int[indexLength];
+
+		for (int i = 0, j = 0; i < employees.length; i++) {
+			EmployeeDTO emp = employees[i];
+			AttendanceDTO[] attx = data.get(emp.getId());
+			if (attx == null)
+				index[j++] = i << 10;
+			else {
+				if (attx.length > 0x3FF)
+					throw new IllegalStateException("The length of AttendanceDTO[] is greater than 2^10");
+				int emp_idx = i << 10;
+				for (int att_idx = 0; att_idx < attx.length; att_idx++)
+					index[j++] = emp_idx | att_idx & 0x3FF;
+			}
+		}
+	}
+
+	int getRowCount() {
+		return index.length;
+	}
+
+	Object getValueAt(int row, int col) {
+		int tuple = index[row];
+		EmployeeDTO employee = employeesModel.getEmployees()[tuple >> 10];
+		if (col == 0)
+			return employee;
+
+		AttendanceDTO[] attx = data.get(employee.getId());
+		if (attx == null)
+			return null;
+
+		AttendanceDTO attendance = attx[tuple & 0x3FF];
+		long ts = col == 1 ? attendance.getCheckedIn() : attendance.getCheckedOut();
+		return ts == 0 ? null : new Date(ts);
+	}
+}
@@ -0,0 +1,135 @@
+package ui;
+
+import da.EmployeeDTO;
+import da.SyntheticReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of a keystroke of the type-ahead search over {@code employees} Russian full names: the queries
+ * are typed char by char, a surname and then the first name, like {@code "и"}, {@code "ив"}, ... {@code "иванов п"}.
+ * The {@link EmployeeNameIndex} is compared with a scan of all the names, and the time to build it is measured.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class NameSearchBenchmark {
+	private static final String[] SURNAMES = {
+			"Иванов", "Смирнов", "Кузнецов", "Попов", "Васильев", "Петров", "Соколов", "Михайлов", "Новиков",
+			"Фёдоров", "Морозов", "Волков", "Алексеев", "Лебедев", "Семёнов", "Егоров", "Павлов", "Козлов",
+			"Степанов", "Николаев", "Орлов", "Андреев", "Макаров", "Никитин", "Захаров", "Зайцев", "Соловьёв",
+			"Борисов", "Яковлев", "Григорьев", "Романов", "Воробьёв", "Сергеев", "Кузьмин", "Фролов", "Александров"};
+	private static final String[] FIRST_NAMES = {
+			"Александр", "Алексей", "Андрей", "Артём", "Борис", "Вадим", "Виктор", "Владимир", "Дмитрий", "Евгений",
+			"Иван", "Игорь", "Кирилл", "Максим", "Михаил", "Никита", "Николай", "Олег", "Павел", "Пётр", "Роман",
+			"Сергей", "Степан", "Юрий"};
+	private static final String[] FEMININE = {
+			"Анна", "Валентина", "Галина", "Дарья", "Евгения", "Екатерина", "Елена", "Ирина", "Мария", "Наталья",
+			"Ольга", "Светлана", "Татьяна", "Юлия"};
+
+	@State(Scope.Thread)
+	public static class Names {
+		@Param({"100000"})
+		public int employees;
+
+		private EmployeeDTO[] sorted;
+		private EmployeeNameIndex index;
+		/** The normalized names indexed the same way as {@link #sorted} */
+		private String[] normalized;
+		private String[] queries;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			Random rnd = new Random(1);
+			String[] names = new String[employees];
+			for (int i = 0; i < employees; i++) {
+				String surname = SURNAMES[rnd.nextInt(SURNAMES.length)];
+				String father = FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)];
+				names[i] = rnd.nextBoolean()
+						? surname + ' ' + FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)] + ' ' + patronymic(father, false)
+						: surname + "а " + FEMININE[rnd.nextInt(FEMININE.length)] + ' ' + patronymic(father, true);
+			}
+			sorted = SyntheticReport.employeesNamed(names);
+			Arrays.sort(sorted, Comparator.comparing(EmployeeDTO::getName));
+			index = new EmployeeNameIndex(sorted);
+			normalized = new String[employees];
+			for (int i = 0; i < employees; i++)
+				normalized[i] = EmployeeNameIndex.normalize(sorted[i].getName());
+
+			List<String> typed = new ArrayList<>();
+			for (int k = 0; k < 100; k++) {
+				String[] words = sorted[rnd.nextInt(employees)].getName().split(" ");
+				String query = words[0] + ' ' + words[1].substring(0, 1);
+				for (int n = 1; n <= query.length(); n++)
+					typed.add(query.substring(0, n));
+			}
+			queries = typed.toArray(new String[typed.size()]);
+		}
+
+		private static String patronymic(String father, boolean feminine) {
+			String base = father.endsWith("й") ? father.substring(0, father.length() - 1) + "е" : father;
+			return base + (feminine ? "вна" : "вич");
+		}
+
+		private String nextQuery() {
+			String q = queries[next];
+			if (++next == queries.length)
+				next = 0;
+			return q;
+		}
+	}
+
+	@Benchmark
+	public EmployeeDTO[] index(Names s) {
+		return s.index.find(s.nextQuery());
+	}
+
+	/** Matches the words of the query against the starts of the words of each name, as the index does */
+	@Benchmark
+	public List<EmployeeDTO> scan(Names s) {
+		String[] words = EmployeeNameIndex.normalize(s.nextQuery()).split("[^\\p{L}\\p{Nd}]+");
+		List<EmployeeDTO> result = new ArrayList<>();
+		for (int i = 0; i < s.normalized.length; i++) {
+			String name = s.normalized[i];
+			boolean all = true;
+			for (int w = 0; w < words.length && all; w++) {
+				all = false;
+				for (int j = name.indexOf(words[w]); j >= 0 && !all; j = name.indexOf(words[w], j + 1))
+					all = j == 0 || !Character.isLetterOrDigit(name.charAt(j - 1));
+			}
+			if (all)
+				result.add(s.sorted[i]);
+		}
+		return result;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public EmployeeNameIndex build(Names s) {
+		return new EmployeeNameIndex(s.sorted);
+	}
+}
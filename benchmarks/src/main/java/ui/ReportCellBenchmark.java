@@ -0,0 +1,79 @@
+package ui;
+
+import da.SyntheticReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of {@code getValueAt} of the daily report table as JTable paints it, row after row and
+ * column after column: the legacy model, looking the boxed {@code employeeId} up on each cell, versus the
+ * current one reading the rows from arrays. A tenth of the employees have no attendance.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class ReportCellBenchmark {
+	@State(Scope.Thread)
+	public static class Model {
+		@Param({"10000"})
+		public int employees;
+
+		@Param({"2"})
+		public int rowsPerEmployee;
+
+		private LegacyReportModel legacy;
+		private DailyReportPanel.CustomTableModel current;
+		private int rowCount;
+		private int row;
+		private int col;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			SyntheticReport report = new SyntheticReport(employees, rowsPerEmployee, 10);
+			EmployeesModel employeesModel = new EmployeesModel();
+			employeesModel.setEmployees(report.getEmployees(), null);
+			legacy = new LegacyReportModel(employeesModel);
+			legacy.setData(report.toMap());
+			current = new DailyReportPanel.CustomTableModel(employeesModel);
+			current.setData(new DailyReportPanel.Report(report.getMidnight(), null, report.toColumns(), false));
+			if (legacy.getRowCount() != current.getRowCount())
+				throw new IllegalStateException("The models differ in the row count");
+			rowCount = current.getRowCount();
+		}
+
+		private void next() {
+			if (++col == 3) {
+				col = 0;
+				if (++row == rowCount)
+					row = 0;
+			}
+		}
+	}
+
+	@Benchmark
+	public Object legacy(Model m) {
+		m.next();
+		return m.legacy.getValueAt(m.row, m.col);
+	}
+
+	@Benchmark
+	public Object current(Model m) {
+		m.next();
+		return m.current.getValueAt(m.row, m.col);
+	}
+}
@@ -0,0 +1,89 @@
+package ui;
+
+import da.AttendanceColumns;
+import da.AttendanceDTO;
+import da.SyntheticReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time to build the row index of the daily report table of 1M employees with 10 rows each: the legacy
+ * packed int index versus the current row arrays. A tenth of the employees have no attendance.
+ * @author danis.tazeev@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Dlogback.configurationFile=logback-benchmarks.xml"})
+public class ReportIndexBenchmark {
+	@State(Scope.Thread)
+	public static class Legacy {
+		@Param({"1000000"})
+		public int employees;
+
+		@Param({"10"})
+		public int rowsPerEmployee;
+
+		private LegacyReportModel model;
+		private Map<Long, AttendanceDTO[]> data;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			SyntheticReport report = new SyntheticReport(employees, rowsPerEmployee, 10);
+			EmployeesModel employeesModel = new EmployeesModel();
+			employeesModel.setEmployees(report.getEmployees(), null);
+			model = new LegacyReportModel(employeesModel);
+			data = report.toMap();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Current {
+		@Param({"1000000"})
+		public int employees;
+
+		@Param({"10"})
+		public int rowsPerEmployee;
+
+		private DailyReportPanel.CustomTableModel model;
+		private long midnight;
+		private AttendanceColumns attendance;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			SyntheticReport report = new SyntheticReport(employees, rowsPerEmployee, 10);
+			EmployeesModel employeesModel = new EmployeesModel();
+			employeesModel.setEmployees(report.getEmployees(), null);
+			model = new DailyReportPanel.CustomTableModel(employeesModel);
+			midnight = report.getMidnight();
+			attendance = report.toColumns();
+		}
+	}
+
+	@Benchmark
+	public int legacy(Legacy s) {
+		s.model.setData(s.data);
+		return s.model.getRowCount();
+	}
+
+	/** The index lets the columns go once the rows are copied, so each call is given a new report */
+	@Benchmark
+	public int current(Current s) {
+		s.model.setData(new DailyReportPanel.Report(s.midnight, null, s.attendance, false));
+		return s.model.getRowCount();
+	}
+}
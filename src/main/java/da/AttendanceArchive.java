@@ -0,0 +1,289 @@
+package da;
+
+import shared.Logging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * A read-only file of the closed attendance checked in before the {@link #getCutoff() cutoff}, exported from
+ * the DB by {@link #export}. The file is mapped into memory, so a query neither goes through JDBC nor copies
+ * the records onto the heap. The attendance checked in before the cutoff but still open at the export stays
+ * in the DB; the archive lists it by {@link #openIdsOf id}.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: magic, version, exportedBefore, cutoff,
+ * recordCount, employeeCount, indexOffset, maxDuration and openCount.
+ * The fixed-width records of {@value #RECORD_SIZE} bytes ({@code id, employeeId, checkedIn, checkedOut})
+ * follow the header ordered by {@code employeeId} and then {@code checkedIn}. The employee index
+ * ({@code employeeId, firstRecord}) ordered by {@code employeeId} follows the records, and the open attendance
+ * ({@code employeeId, id}) ordered by {@code employeeId} and then {@code id} follows the index.
+ * @author danis.tazeev@gmail.com
+ */
+public final class AttendanceArchive {
+	private static final Logging log = new Logging(AttendanceArchive.class);
+	private static final int MAGIC = 0x41544152; // ATAR
+	private static final int VERSION = 2;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 32;
+	private static final int INDEX_ENTRY_SIZE = 16;
+	private static final int OPEN_ENTRY_SIZE = 16;
+	private static final long[] NO_IDS = {};
+
+	private final MappedByteBuffer buf;
+	private final long exportedBefore;
+	private final long cutoff;
+	private final int recordCount;
+	private final int employeeCount;
+	private final int indexOffset;
+	/** The longest attendance; limits how far before {@code from} a lookup starts */
+	private final long maxDuration;
+	private final int openCount;
+
+	private AttendanceArchive(MappedByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC)
+			throw new IOException("Not an attendance archive");
+		if (buf.getInt(4) != VERSION)
+			throw new IOException("Unsupported archive version: " + buf.getInt(4));
+		exportedBefore = buf.getLong(8);
+		cutoff = buf.getLong(16);
+		long recordCount = buf.getLong(24);
+		long employeeCount = buf.getLong(32);
+		long indexOffset = buf.getLong(40);
+		maxDuration = buf.getLong(48);
+		long openCount = buf.getLong(56);
+		if (recordCount < 0 || employeeCount < 0 || maxDuration < 0 || openCount < 0
+				|| indexOffset != HEADER_SIZE + recordCount * RECORD_SIZE
+				|| buf.limit() != indexOffset + employeeCount * INDEX_ENTRY_SIZE + openCount * OPEN_ENTRY_SIZE)
+			throw new IOException("Corrupted archive");
+		this.openCount = (int)openCount;
+		this.recordCount = (int)recordCount;
+		this.employeeCount = (int)employeeCount;
+		this.indexOffset = (int)indexOffset;
+	}
+
+	/** Maps the archive file into memory */
+	public static AttendanceArchive open(Path file) throws IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file = null");
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() > Integer.MAX_VALUE)
+				throw new IOException("Archive exceeds 2 GB: " + ch.size());
+			// the mapping outlives the channel
+			return new AttendanceArchive(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		}
+	}
+
+	/**
+	 * Exports the attendance checked in before {@code before} into the {@code file} and maps it.
+	 * The file is written aside and then moved in place, so a failed export leaves the previous one intact.
+	 * The attendance left open long ago, e.g. by an employee who forgot to check out, stays in the DB
+	 * and does not hold the archive back.
+	 */
+	public static AttendanceArchive export(AttendanceDAO dao, Path file, long before) throws IOException {
+		if (dao == null)
+			throw new IllegalArgumentException("dao = null");
+		if (file == null)
+			throw new IllegalArgumentException("file = null");
+		log.info("export({}, ...)", file);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Writer writer = new Writer(ch);
+			dao.forEachOpenAttendanceCheckedInBefore(before, writer::open);
+			if (writer.openCount > 0) {
+				log.warn("export: {} attendance checked in before {} is still open; stale shifts are left in the DB",
+						writer.openCount, Instant.ofEpochMilli(before));
+			}
+			try {
+				dao.forEachAttendanceCheckedInBefore(before, writer);
+			} catch (UncheckedIOException ex) {
+				throw ex.getCause();
+			}
+			writer.finish(before, before);
+			ch.force(false);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		AttendanceArchive archive = open(file);
+		log.info("export = success: {} records of {} employees", archive.recordCount, archive.employeeCount);
+		return archive;
+	}
+
+	/** Appends the records and collects the index while the rows are pushed */
+	private static final class Writer implements AttendanceConsumer {
+		private final FileChannel ch;
+		private final ByteBuffer out = ByteBuffer.allocateDirect(RECORD_SIZE * 2048);
+		private long recordCount;
+		private int employeeCount;
+		private long[] employees = new long[16];
+		private long[] firsts = new long[16];
+		private long maxDuration;
+		private int openCount;
+		private long[] openEmployees = new long[16];
+		private long[] openIds = new long[16];
+
+		private Writer(FileChannel ch) throws IOException {
+			this.ch = ch;
+			ch.position(HEADER_SIZE);
+		}
+
+		@Override
+		public void accept(long id, long employeeId, long checkedIn, long checkedOut) {
+			try {
+				if (employeeCount == 0 || employees[employeeCount - 1] != employeeId) {
+					if (employeeCount > 0 && employees[employeeCount - 1] > employeeId)
+						throw new IOException("Rows MUST be ordered by employeeId");
+					if (employeeCount == employees.length) {
+						employees = Arrays.copyOf(employees, employeeCount + (employeeCount >> 1));
+						firsts = Arrays.copyOf(firsts, employees.length);
+					}
+					employees[employeeCount] = employeeId;
+					firsts[employeeCount++] = recordCount;
+				}
+				maxDuration = Math.max(maxDuration, checkedOut - checkedIn);
+				if (!out.hasRemaining())
+					flush();
+				out.putLong(id).putLong(employeeId).putLong(checkedIn).putLong(checkedOut);
+				recordCount++;
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		/** The open attendance MUST be pushed in the order of {@code employeeId} and then {@code id} */
+		private void open(long id, long employeeId, long checkedIn, long checkedOut) {
+			if (openCount == openIds.length) {
+				openIds = Arrays.copyOf(openIds, openCount + (openCount >> 1));
+				openEmployees = Arrays.copyOf(openEmployees, openIds.length);
+			}
+			openEmployees[openCount] = employeeId;
+			openIds[openCount++] = id;
+		}
+
+		private void flush() throws IOException {
+			out.flip();
+			while (out.hasRemaining())
+				ch.write(out);
+			out.clear();
+		}
+
+		private void finish(long exportedBefore, long cutoff) throws IOException {
+			for (int i = 0; i < employeeCount; i++) {
+				if (out.remaining() < INDEX_ENTRY_SIZE)
+					flush();
+				out.putLong(employees[i]).putLong(firsts[i]);
+			}
+			for (int i = 0; i < openCount; i++) {
+				if (out.remaining() < OPEN_ENTRY_SIZE)
+					flush();
+				out.putLong(openEmployees[i]).putLong(openIds[i]);
+			}
+			flush();
+			out.putInt(MAGIC).putInt(VERSION)
+					.putLong(exportedBefore).putLong(cutoff)
+					.putLong(recordCount).putLong(employeeCount)
+					.putLong(HEADER_SIZE + recordCount * RECORD_SIZE).putLong(maxDuration).putLong(openCount);
+			out.flip();
+			ch.position(0);
+			while (out.hasRemaining())
+				ch.write(out);
+		}
+	}
+
+	/** @return the {@code before} timestamp the archive was {@link #export exported} with */
+	public long getExportedBefore() { return exportedBefore; }
+
+	/** @return the archive holds all the attendance checked in before this timestamp but the {@link #openIdsOf open} */
+	public long getCutoff() { return cutoff; }
+
+	/** @return the ids of the attendance of the employee checked in before the cutoff but open at the export */
+	long[] openIdsOf(long employeeId) {
+		int pos = indexOffset + employeeCount * INDEX_ENTRY_SIZE;
+		int lo = 0;
+		int hi = openCount;
+		while (lo < hi) {
+			int mid = lo + hi >>> 1;
+			if (buf.getLong(pos + mid * OPEN_ENTRY_SIZE) < employeeId)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		int end = lo;
+		while (end < openCount && buf.getLong(pos + end * OPEN_ENTRY_SIZE) == employeeId)
+			end++;
+		if (end == lo)
+			return NO_IDS;
+		long[] ids = new long[end - lo];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = buf.getLong(pos + (lo + i) * OPEN_ENTRY_SIZE + 8);
+		return ids;
+	}
+
+	/** @return the number of records */
+	public int size() { return recordCount; }
+
+	/**
+	 * Pushes the archived attendance of the employee during the given period to the {@code consumer}
+	 * in the order of {@code checkedIn}.
+	 * @param from the timestamp of the beginning of the interval (inclusive)
+	 * @param to the timestamp of the end of the interval (exclusive)
+	 */
+	public void forEachEmployeeAttendanceBetween(long employeeId, long from, long to, AttendanceConsumer consumer) {
+		if (to <= from)
+			throw new IllegalArgumentException("to must be greater than from");
+		if (consumer == null)
+			throw new IllegalArgumentException("consumer = null");
+		int slot = slotOf(employeeId);
+		if (slot < 0)
+			return;
+		int first = (int)buf.getLong(indexOffset + slot * INDEX_ENTRY_SIZE + 8);
+		int end = slot + 1 < employeeCount ? (int)buf.getLong(indexOffset + (slot + 1) * INDEX_ENTRY_SIZE + 8) : recordCount;
+		// no attendance checked in before (from - maxDuration) is checked out after from
+		int lo = firstRecordCheckedInAfter(first, end, from - maxDuration - 1);
+		int hi = firstRecordCheckedInAfter(lo, end, to - 1);
+		for (int i = lo; i < hi; i++) {
+			int pos = HEADER_SIZE + i * RECORD_SIZE;
+			long checkedOut = buf.getLong(pos + 24);
+			if (checkedOut > from)
+				consumer.accept(buf.getLong(pos), buf.getLong(pos + 8), buf.getLong(pos + 16), checkedOut);
+		}
+	}
+
+	/** @return the slot in the employee index or a negative value if the employee has no records */
+	private int slotOf(long employeeId) {
+		int lo = 0;
+		int hi = employeeCount - 1;
+		while (lo <= hi) {
+			int mid = lo + hi >>> 1;
+			long id = buf.getLong(indexOffset + mid * INDEX_ENTRY_SIZE);
+			if (id < employeeId)
+				lo = mid + 1;
+			else if (id > employeeId)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/** @return the first record in {@code [lo, hi)} checked in after the given timestamp */
+	private int firstRecordCheckedInAfter(int lo, int hi, long timestamp) {
+		while (lo < hi) {
+			int mid = lo + hi >>> 1;
+			if (buf.getLong(HEADER_SIZE + mid * RECORD_SIZE + 16) > timestamp)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,110 @@
+package da;
+
+import java.util.Arrays;
+
+/**
+ * A compact read-only result of an attendance query. Each attribute is stored in its own primitive array,
+ * so a row costs 32 bytes and no object. Rows are grouped by {@code employeeId} in ascending order;
+ * the group of an employee is found through the employee offset table.
+ * @author danis.tazeev@gmail.com
+ */
+public final class AttendanceColumns {
+	private final int size;
+	private final long[] ids;
+	private final long[] employeeIds;
+	private final long[] checkedIns;
+	private final long[] checkedOuts;
+
+	/** Distinct {@code employeeId}s in ascending order */
+	private final long[] employees;
+	/** The rows of {@code employees[i]} are {@code [offsets[i], offsets[i + 1])} */
+	private final int[] offsets;
+
+	private AttendanceColumns(int size, long[] ids, long[] employeeIds, long[] checkedIns, long[] checkedOuts,
+			long[] employees, int[] offsets) {
+		this.size = size;
+		this.ids = ids;
+		this.employeeIds = employeeIds;
+		this.checkedIns = checkedIns;
+		this.checkedOuts = checkedOuts;
+		this.employees = employees;
+		this.offsets = offsets;
+	}
+
+	/** @return the number of rows */
+	public int size() { return size; }
+
+	public long getId(int row) { return ids[checkRow(row)]; }
+	public long getEmployeeId(int row) { return employeeIds[checkRow(row)]; }
+	public long getCheckedIn(int row) { return checkedIns[checkRow(row)]; }
+	/** @return {@code 0} if attendance has not been checked out yet */
+	public long getCheckedOut(int row) { return checkedOuts[checkRow(row)]; }
+
+	private int checkRow(int row) {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("row = " + row);
+		return row;
+	}
+
+	/** @return the number of distinct employees */
+	public int employeeCount() { return employees.length; }
+
+	/** @param slot the index in the employee offset table */
+	public long employeeIdAt(int slot) { return employees[slot]; }
+	/** @return the first row of the employee in the given {@code slot} */
+	public int startOf(int slot) { return offsets[slot]; }
+	/** @return the row next to the last row of the employee in the given {@code slot} */
+	public int endOf(int slot) { return offsets[slot + 1]; }
+
+	/**
+	 * @return the slot of the employee in the offset table or a negative value
+	 * if the employee has no rows in this result
+	 */
+	public int slotOf(long employeeId) { return Arrays.binarySearch(employees, employeeId); }
+
+	/** Collects the rows pushed in the ascending order of {@code employeeId} */
+	static final class Builder implements AttendanceConsumer {
+		private int size;
+		private long[] ids = new long[16];
+		private long[] employeeIds = new long[16];
+		private long[] checkedIns = new long[16];
+		private long[] checkedOuts = new long[16];
+		private int employeeCount;
+		private long[] employees = new long[16];
+		private int[] offsets = new int[17];
+
+		@Override
+		public void accept(long id, long employeeId, long checkedIn, long checkedOut) {
+			if (size > 0 && employeeIds[size - 1] > employeeId)
+				throw new IllegalStateException("Rows MUST be ordered by employeeId");
+			if (size == ids.length) {
+				int capacity = size + (size >> 1);
+				ids = Arrays.copyOf(ids, capacity);
+				employeeIds = Arrays.copyOf(employeeIds, capacity);
+				checkedIns = Arrays.copyOf(checkedIns, capacity);
+				checkedOuts = Arrays.copyOf(checkedOuts, capacity);
+			}
+			if (size == 0 || employeeIds[size - 1] != employeeId) {
+				if (employeeCount == employees.length) {
+					employees = Arrays.copyOf(employees, employeeCount + (employeeCount >> 1));
+					offsets = Arrays.copyOf(offsets, employees.length + 1);
+				}
+				employees[employeeCount] = employeeId;
+				offsets[employeeCount++] = size;
+			}
+			ids[size] = id;
+			employeeIds[size] = employeeId;
+			checkedIns[size] = checkedIn;
+			checkedOuts[size] = checkedOut;
+			size++;
+		}
+
+		AttendanceColumns build() {
+			offsets[employeeCount] = size;
+			return new AttendanceColumns(size,
+					Arrays.copyOf(ids, size), Arrays.copyOf(employeeIds, size),
+					Arrays.copyOf(checkedIns, size), Arrays.copyOf(checkedOuts, size),
+					Arrays.copyOf(employees, employeeCount), Arrays.copyOf(offsets, employeeCount + 1));
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package da;
+
+/**
+ * Receives attendance rows one by one as primitives, so that streaming a result does not allocate per row.
+ * @author danis.tazeev@gmail.com
+ */
+@FunctionalInterface
+public interface AttendanceConsumer {
+	/** @param checkedOut {@code 0} if attendance has not been checked out yet */
+	void accept(long id, long employeeId, long checkedIn, long checkedOut);
+}
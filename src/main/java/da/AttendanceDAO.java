@@ -1,22 +1,160 @@
 package da;
 
+import shared.FailureException;
 import shared.LogicError;
 
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /** @author danis.tazeev@gmail.com */
 public final class AttendanceDAO extends DAO {
+	private static final OpenShiftRegistry openShifts = new OpenShiftRegistry();
+	/**
+	 * Writers hold the read lock for the whole transaction changing both the DB and the
+	 * {@link #openShifts registry}. The write lock is held while the registry is compared to or loaded
+	 * from the DB, and while the {@link #selectWatermark() watermark} is read, since then no writer
+	 * transaction may be in flight.
+	 */
+	private static final ReadWriteLock writersLock = new ReentrantReadWriteLock();
+	private static volatile boolean openShiftsWarmedUp;
+	private static volatile boolean openShiftsVerification;
+	/** The catalog of the partitions; {@code null} if it is to be reloaded */
+	private static volatile AttendancePartition[] partitions;
+	/**
+	 * Queries hold the read lock from picking the partitions until the DB has run them.
+	 * The write lock is held while a move into a partition is committed and the catalog is reset,
+	 * so that no query misses the moved rows by picking the partitions before the commit.
+	 */
+	private static final ReadWriteLock partitionsLock = new ReentrantReadWriteLock();
+	private static volatile AttendanceArchive archive;
+	/** The watermarks handed out and still referenced; the log records they may need are not {@link #pruneLog pruned} */
+	private static final Set<AttendanceWatermark> watermarksInUse = Collections.newSetFromMap(new WeakHashMap<>());
+
+	/**
+	 * When on, each {@link #hasNotCheckedOutYet} answered from the in-memory registry
+	 * is compared against the DB and a mismatch is reported as a warning.
+	 */
+	public static void setOpenShiftsVerification(boolean on) { openShiftsVerification = on; }
+
+	/**
+	 * Makes {@link #forEachEmployeeAttendanceBetween} read the attendance checked in before the cutoff
+	 * of the {@code archive} from the archive instead of the DB.
+	 * @param archive {@code null} to read everything from the DB
+	 */
+	public static void useArchive(AttendanceArchive archive) { AttendanceDAO.archive = archive; }
+
+	/**
+	 * Loads the {@code employeeId}s having an open attendance into memory. Afterwards {@link #hasNotCheckedOutYet}
+	 * is answered from memory, and {@link #checkIn} and {@link #checkOut} keep the memory up to date.
+	 */
+	public void warmUpOpenShifts() {
+		info("warmUpOpenShifts()");
+		writersLock.writeLock().lock();
+		try {
+			long[] ids = selectOpenShiftEmployeeIds();
+			openShifts.clear();
+			for (long id : ids)
+				openShifts.add(id);
+			openShiftsWarmedUp = true;
+			info("warmUpOpenShifts = success: {} open", ids.length);
+		} finally {
+			writersLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Compares the in-memory registry of open attendance to the DB and reports each mismatch as a warning.
+	 * @return {@code true} if the registry is consistent with the DB or it has not been warmed up yet
+	 */
+	public boolean verifyOpenShifts() {
+		if (!openShiftsWarmedUp)
+			return true;
+		writersLock.writeLock().lock();
+		try {
+			long[] db = selectOpenShiftEmployeeIds();
+			long[] mem = openShifts.toArray();
+			Arrays.sort(db);
+			Arrays.sort(mem);
+			boolean consistent = true;
+			for (int i = 0, j = 0; i < db.length || j < mem.length; ) {
+				if (j >= mem.length || i < db.length && db[i] < mem[j]) {
+					warn("verifyOpenShifts: employee {} has an open attendance missing in memory", db[i++]);
+					consistent = false;
+				} else if (i >= db.length || mem[j] < db[i]) {
+					warn("verifyOpenShifts: employee {} has no open attendance but is in memory", mem[j++]);
+					consistent = false;
+				} else {
+					i++;
+					j++;
+				}
+			}
+			return consistent;
+		} finally {
+			writersLock.writeLock().unlock();
+		}
+	}
+
+	private long[] selectOpenShiftEmployeeIds() {
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.selectOpenShiftEmployeeIds",
+					"select distinct employee_id from attendance where checked_out is null");
+			rs = stmt.executeQuery();
+			long[] result = new long[64];
+			int n = 0;
+			while (rs.next()) {
+				if (n == result.length)
+					result = Arrays.copyOf(result, n << 1);
+				result[n++] = rs.getLong(1);
+			}
+			return Arrays.copyOf(result, n);
+		} catch (SQLException ex) {
+			throw failure(ex, "selectOpenShiftEmployeeIds = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
 	public boolean hasNotCheckedOutYet(long employeeId) {
+		if (openShiftsWarmedUp) {
+			if (!openShiftsVerification)
+				return openShifts.contains(employeeId);
+			writersLock.writeLock().lock();
+			try {
+				boolean mem = openShifts.contains(employeeId);
+				boolean db = selectHasNotCheckedOutYet(employeeId);
+				if (mem != db)
+					warn("hasNotCheckedOutYet({}): memory = {}, DB = {}", employeeId, mem, db);
+				return db;
+			} finally {
+				writersLock.writeLock().unlock();
+			}
+		}
+		return selectHasNotCheckedOutYet(employeeId);
+	}
+
+	private boolean selectHasNotCheckedOutYet(long employeeId) {
 		ResultSet rs = null;
 		try {
-			PreparedStatement stmt = prepareStatement(
+			PreparedStatement stmt = prepareStatement("attendance.selectHasNotCheckedOutYet",
 					"select 1 from attendance where employee_id = ? and checked_out is null");
 			stmt.setLong(1, employeeId);
 			rs = stmt.executeQuery();
@@ -28,119 +166,881 @@ public final class AttendanceDAO extends DAO {
 		}
 	}
 
+	/**
+	 * Answers {@link #hasNotCheckedOutYet} for all the {@code employees} at once with a single query on the index
+	 * of {@code checked_out}, or from memory once {@link #warmUpOpenShifts warmed up}.
+	 * @return bit {@code i} is set if {@code employees[i]} has not checked out yet. Never {@code null}
+	 */
+	public BitSet selectOpenShiftsOf(EmployeeDTO[] employees) {
+		if (employees == null)
+			throw new IllegalArgumentException("employees = null");
+		long[] open = openShiftsWarmedUp && !openShiftsVerification ? openShifts.toArray() : selectOpenShiftEmployeeIds();
+		// there are far fewer open attendances than employees
+		Arrays.sort(open);
+		BitSet result = new BitSet(employees.length);
+		if (open.length > 0) {
+			for (int i = 0; i < employees.length; i++) {
+				if (Arrays.binarySearch(open, employees[i].getId()) >= 0)
+					result.set(i);
+			}
+		}
+		return result;
+	}
+
+	/** Prepared with {@link Statement#RETURN_GENERATED_KEYS} wherever used; the {@code id} goes to the journal */
+	private static final String INSERT_ATTENDANCE = "insert into attendance(employee_id, checked_in) values(?, ?)";
+
 	public void checkIn(long employeeId, long timestamp) {
 		info("checkIn({}, ...)", employeeId);
+		writersLock.readLock().lock();
 		try {
-			PreparedStatement stmt = prepareStatement("insert into attendance(employee_id, checked_in) values(?, ?)");
+			PreparedStatement stmt = prepareStatement("attendance.checkIn",
+					INSERT_ATTENDANCE, Statement.RETURN_GENERATED_KEYS);
 			stmt.setLong(1, employeeId);
 			stmt.setTimestamp(2, new Timestamp(timestamp));
 			stmt.executeUpdate();
+			long id = generatedKey(stmt);
+			openShifts.add(employeeId);
+			AttendanceJournal.checkedIn(id, employeeId, timestamp);
 			info("checkIn = success");
 		} catch (SQLException ex) {
 			throw failure(ex, "checkIn = fail");
+		} finally {
+			writersLock.readLock().unlock();
 		}
 	}
 
 	public void checkOut(long employeeId, long timestamp) {
 		info("checkOut({}, ...)", employeeId);
+		writersLock.readLock().lock();
 		try {
 			disableAutoCommit();
-			PreparedStatement stmt = prepareStatement(
-					"update attendance set checked_out = ? where employee_id = ? and checked_out is null");
-			stmt.setTimestamp(1, new Timestamp(timestamp));
-			stmt.setLong(2, employeeId);
-			int n = stmt.executeUpdate();
-			if (n != 1) {
+			long id = selectOpenAttendanceIdForUpdate(employeeId);
+			if (id < 0) {
 				rollbackAndEnableAutoCommit();
-				throw error(new LogicError("Service contract violated"),
-						"checkOut = fail: checkIn/checkOut contract violated:"
-						+ " each single checkIn() MUST be followed by a single checkOut()");
+				throw contractViolated();
 			}
+			PreparedStatement stmt = prepareStatement("attendance.checkOut.update",
+					"update attendance set checked_out = ? where id = ?");
+			stmt.setTimestamp(1, new Timestamp(timestamp));
+			stmt.setLong(2, id);
+			stmt.executeUpdate();
+			stmt = prepareStatement("attendance.checkOut.log", "insert into attendance_log(attendance_id) values(?)");
+			stmt.setLong(1, id);
+			stmt.executeUpdate();
 			commitAndEnableAutoCommit();
+			openShifts.remove(employeeId);
+			AttendanceJournal.checkedOut(id, employeeId, timestamp);
+			RollupMaintainer.checkedOut();
 			info("checkOut = success");
 		} catch (SQLException ex) {
 			rollbackAndEnableAutoCommit();
-			// err code = 90053: scalar subquery contains more than one row
 			throw failure(ex, "checkOut = fail");
+		} finally {
+			writersLock.readLock().unlock();
 		}
 	}
-	
+
+	/** @return the {@code id} generated by the last execution of the {@code stmt} */
+	private static long generatedKey(PreparedStatement stmt) throws SQLException {
+		ResultSet rs = null;
+		try {
+			rs = stmt.getGeneratedKeys();
+			if (!rs.next())
+				throw new SQLException("No key generated");
+			return rs.getLong(1);
+		} finally {
+			close(rs);
+		}
+	}
+
+	/**
+	 * Locks the open attendance of the employee till the end of the current transaction.
+	 * @return the {@code id} of the open attendance or {@code -1} unless the employee has a single open attendance
+	 */
+	private long selectOpenAttendanceIdForUpdate(long employeeId) throws SQLException {
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.selectOpenAttendanceIdForUpdate",
+					"select id from attendance where employee_id = ? and checked_out is null for update");
+			stmt.setLong(1, employeeId);
+			rs = stmt.executeQuery();
+			if (!rs.next())
+				return -1;
+			long id = rs.getLong(1);
+			return rs.next() ? -1 : id;
+		} finally {
+			close(rs);
+		}
+	}
+
+	private LogicError contractViolated() {
+		return error(new LogicError("Service contract violated"),
+				"checkOut = fail: checkIn/checkOut contract violated:"
+				+ " each single checkIn() MUST be followed by a single checkOut()");
+	}
+
+	/**
+	 * Writes the events in a single transaction. Consecutive check outs are sent in a single JDBC batch;
+	 * check ins are executed one by one, since H2 returns the key generated by the last row of a batch only
+	 * (an embedded H2 executes a batch row by row anyway). If the transaction fails as a whole, the events
+	 * are written one by one, so that each event gets its own outcome.
+	 * @return the failure of each event; {@code null} elements stand for the events written successfully
+	 */
+	Throwable[] write(AttendanceWriter.Event[] events) {
+		info("write([{}])", events.length);
+		Throwable[] failures = new Throwable[events.length];
+		long[] ids = new long[events.length];
+		PreparedStatement insert = null;
+		PreparedStatement update = null;
+		PreparedStatement log = null;
+		writersLock.readLock().lock();
+		try {
+			disableAutoCommit();
+			insert = prepareStatement("attendance.write.insert", INSERT_ATTENDANCE, Statement.RETURN_GENERATED_KEYS);
+			update = prepareStatement("attendance.write.update", "update attendance set checked_out = ? where id = ?");
+			log = prepareStatement("attendance.write.log", "insert into attendance_log(attendance_id) values(?)");
+			// the employees checked out by the batched updates not executed yet
+			LongObjectMap<Boolean> pendingCheckOuts = new LongObjectMap<>();
+			for (int start = 0, end; start < events.length; start = end) {
+				boolean checkIn = events[start].checkIn;
+				for (end = start; end < events.length && events[end].checkIn == checkIn; end++) {
+					AttendanceWriter.Event e = events[end];
+					if (checkIn) {
+						insert.setLong(1, e.employeeId);
+						insert.setTimestamp(2, new Timestamp(e.timestamp));
+						insert.executeUpdate();
+						ids[end] = generatedKey(insert);
+						continue;
+					}
+					if (pendingCheckOuts.containsKey(e.employeeId))
+						break; // let the pending update execute first, so that the lookup below sees it
+					long id = selectOpenAttendanceIdForUpdate(e.employeeId);
+					if (id < 0) {
+						failures[end] = contractViolated();
+						continue;
+					}
+					pendingCheckOuts.put(e.employeeId, Boolean.TRUE);
+					ids[end] = id;
+					update.setTimestamp(1, new Timestamp(e.timestamp));
+					update.setLong(2, id);
+					update.addBatch();
+					log.setLong(1, id);
+					log.addBatch();
+				}
+				if (!checkIn) {
+					update.executeBatch();
+					log.executeBatch();
+					pendingCheckOuts.clear();
+				}
+			}
+			commitAndEnableAutoCommit();
+			for (int i = 0; i < events.length; i++) {
+				AttendanceWriter.Event e = events[i];
+				if (failures[i] == null) {
+					if (e.checkIn) {
+						openShifts.add(e.employeeId);
+						AttendanceJournal.checkedIn(ids[i], e.employeeId, e.timestamp);
+					} else {
+						openShifts.remove(e.employeeId);
+						AttendanceJournal.checkedOut(ids[i], e.employeeId, e.timestamp);
+					}
+				}
+			}
+			RollupMaintainer.checkedOut();
+			info("write = success");
+			return failures;
+		} catch (SQLException ex) {
+			rollbackAndEnableAutoCommit();
+			// the statements are cached along with the connection; do not let the rest of the batch leak
+			clearBatch(update);
+			clearBatch(log);
+			warn(ex, "write = fail: writing one by one");
+			return writeOneByOne(events);
+		} finally {
+			writersLock.readLock().unlock();
+		}
+	}
+
+	private static void clearBatch(PreparedStatement stmt) {
+		if (stmt != null) {
+			try {
+				stmt.clearBatch();
+			} catch (SQLException ignore) {}
+		}
+	}
+
+	private Throwable[] writeOneByOne(AttendanceWriter.Event[] events) {
+		Throwable[] failures = new Throwable[events.length];
+		for (int i = 0; i < events.length; i++) {
+			AttendanceWriter.Event e = events[i];
+			try {
+				if (e.checkIn)
+					checkIn(e.employeeId, e.timestamp);
+				else
+					checkOut(e.employeeId, e.timestamp);
+			} catch (FailureException | LogicError err) {
+				failures[i] = err;
+			}
+		}
+		return failures;
+	}
+
+	/** The fetch size used by the methods that return whole results */
+	static final int DEFAULT_FETCH_SIZE = 1000;
+
 	/**
 	 * @param from the timestamp of the beginning of the interval (inclusive) 
 	 * @param to the timestamp of the end of the interval (exclusive)
 	 * @return Never {@code null}
 	 */
 	public AttendanceDTO[] selectEmployeeAttendanceBetween(long employeeId, long from, long to) {
+		List<AttendanceDTO> result = new ArrayList<>();
+		forEachEmployeeAttendanceBetween(employeeId, from, to, DEFAULT_FETCH_SIZE,
+				(id, empId, checkedIn, checkedOut) -> result.add(new AttendanceDTO(id, empId, checkedIn, checkedOut)));
+		return result.toArray(new AttendanceDTO[result.size()]);
+	}
+
+	/**
+	 * The same as {@link #selectEmployeeAttendanceBetween} but the result is columnar.
+	 * @return Never {@code null}
+	 */
+	public AttendanceColumns selectEmployeeAttendanceColumnsBetween(long employeeId, long from, long to) {
+		AttendanceColumns.Builder result = new AttendanceColumns.Builder();
+		forEachEmployeeAttendanceBetween(employeeId, from, to, DEFAULT_FETCH_SIZE, result);
+		return result.build();
+	}
+
+	/**
+	 * Pushes the attendance of the employee during the given period to the {@code consumer} row by row
+	 * in the order of {@code id}, without collecting the rows in memory. If an {@link #useArchive archive}
+	 * is in use, the attendance checked in before its cutoff is read from the archive and pushed first
+	 * in the order of {@code checkedIn}, except the attendance still open at the export, which is read from the DB.
+	 * @param from the timestamp of the beginning of the interval (inclusive)
+	 * @param to the timestamp of the end of the interval (exclusive)
+	 * @param fetchSize the number of rows fetched from the DB at once
+	 */
+	public void forEachEmployeeAttendanceBetween(
+			long employeeId, long from, long to, int fetchSize, AttendanceConsumer consumer) {
 		if (to <= from)
 			throw new IllegalArgumentException("to must be greater than from");
+		if (fetchSize <= 0)
+			throw new IllegalArgumentException("fetchSize must be greater than 0");
+		if (consumer == null)
+			throw new IllegalArgumentException("consumer = null");
+		AttendanceArchive archive = AttendanceDAO.archive;
+		long cutoff = archive == null ? Long.MIN_VALUE : archive.getCutoff();
+		if (from < cutoff) {
+			archive.forEachEmployeeAttendanceBetween(employeeId, from, to, consumer);
+			if (to <= cutoff)
+				return;
+		}
+		long[] openIds = from < cutoff ? archive.openIdsOf(employeeId) : null;
 		ResultSet rs = null;
 		try {
-			PreparedStatement stmt = prepareStatement(
-					"select id, employee_id, checked_in, checked_out"
-					+ " from attendance"
-					+ " where employee_id = ? and checked_in < ? and (checked_out > ? or checked_out is null)"
-					+ " order by id");
-			stmt.setLong(1, employeeId);
-			stmt.setTimestamp(2, new Timestamp(to));
-			stmt.setTimestamp(3, new Timestamp(from));
-			rs = stmt.executeQuery();
-
-			List<AttendanceDTO> result = new ArrayList<>();
+			partitionsLock.readLock().lock();
+			try {
+				AttendancePartition[] partitions = selectPartitionsOverlapping(from, to, cutoff);
+				StringBuilder where = new StringBuilder(
+						"employee_id = ? and checked_in < ? and (checked_out > ? or checked_out is null)");
+				if (openIds != null) {
+					where.append(" and (checked_in >= ?");
+					for (int i = 0; i < openIds.length; i++)
+						where.append(i == 0 ? " or id in (?" : ", ?");
+					where.append(openIds.length == 0 ? ")" : "))");
+				}
+				PreparedStatement stmt = prepareStatement("attendance.forEachEmployeeAttendanceBetween", unionAll(
+						"id, employee_id, checked_in, checked_out", where.toString(), partitions, "id"));
+				int n = openIds == null ? 3 : 4 + openIds.length;
+				for (int i = 0; i <= partitions.length; i++) {
+					stmt.setLong(n * i + 1, employeeId);
+					stmt.setTimestamp(n * i + 2, new Timestamp(to));
+					stmt.setTimestamp(n * i + 3, new Timestamp(from));
+					if (openIds != null) {
+						stmt.setTimestamp(n * i + 4, new Timestamp(cutoff));
+						for (int j = 0; j < openIds.length; j++)
+							stmt.setLong(n * i + 5 + j, openIds[j]);
+					}
+				}
+				stmt.setFetchSize(fetchSize);
+				rs = stmt.executeQuery();
+			} finally {
+				partitionsLock.readLock().unlock();
+			}
 			while (rs.next()) {
 				Timestamp ts_checkedOut = rs.getTimestamp(4);
 				long millis_checkedOut = ts_checkedOut == null ? 0 : ts_checkedOut.getTime();
-				result.add(new AttendanceDTO(rs.getLong(1), rs.getLong(2),
-						rs.getTimestamp(3).getTime(), millis_checkedOut));
+				consumer.accept(rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime(), millis_checkedOut);
 			}
-			return result.toArray(new AttendanceDTO[result.size()]);
 		} catch (SQLException ex) {
-			throw failure(ex, "selectEmployeeAttendanceBetween({}, ...) = fail", employeeId);
+			throw failure(ex, "forEachEmployeeAttendanceBetween({}, ...) = fail", employeeId);
 		} finally {
 			close(rs);
 		}
 	}
 
 	/**
-	 * @return A {@code Map} of {@code emplyeeId} to his/her attendance during the given period.
-	 * If an employee didn't attend the given period the {@code Map} does not contains a mapping
+	 * @return A map of {@code emplyeeId} to his/her attendance during the given period.
+	 * If an employee didn't attend the given period the map does not contains a mapping
 	 * for that employee. Never {@code null}
 	 */
-	public Map<Long, AttendanceDTO[]> selectAllEmployeesAttendanceBetween(long from, long to) {
+	public LongObjectMap<AttendanceDTO[]> selectAllEmployeesAttendanceBetween(long from, long to) {
+		final LongObjectMap<AttendanceDTO[]> result = new LongObjectMap<>();
+		final List<AttendanceDTO> attendance = new ArrayList<>();
+		forEachAttendanceBetween(from, to, DEFAULT_FETCH_SIZE, (id, employeeId, checkedIn, checkedOut) -> {
+			if (!attendance.isEmpty() && attendance.get(0).getEmployeeId() != employeeId) {
+				result.put(attendance.get(0).getEmployeeId(), attendance.toArray(new AttendanceDTO[attendance.size()]));
+				attendance.clear();
+			}
+			attendance.add(new AttendanceDTO(id, employeeId, checkedIn, checkedOut));
+		});
+		if (!attendance.isEmpty())
+			result.put(attendance.get(0).getEmployeeId(), attendance.toArray(new AttendanceDTO[attendance.size()]));
+		return result;
+	}
+
+	/**
+	 * The same as {@link #selectAllEmployeesAttendanceBetween} but the result is columnar:
+	 * an employee who didn't attend the given period has no rows in the result.
+	 * @return Never {@code null}
+	 */
+	public AttendanceColumns selectAllEmployeesAttendanceColumnsBetween(long from, long to) {
+		AttendanceColumns.Builder result = new AttendanceColumns.Builder();
+		forEachAttendanceBetween(from, to, DEFAULT_FETCH_SIZE, result);
+		return result.build();
+	}
+
+	/**
+	 * Pushes the attendance of all the employees during the given period to the {@code consumer} row by row
+	 * in the order of {@code employeeId} and then {@code id}, without collecting the rows in memory.
+	 * @param from the timestamp of the beginning of the interval (inclusive)
+	 * @param to the timestamp of the end of the interval (exclusive)
+	 * @param fetchSize the number of rows fetched from the DB at once
+	 */
+	public void forEachAttendanceBetween(long from, long to, int fetchSize, AttendanceConsumer consumer) {
 		if (to <= from)
 			throw new IllegalArgumentException("to must be greater than from");
+		if (fetchSize <= 0)
+			throw new IllegalArgumentException("fetchSize must be greater than 0");
+		if (consumer == null)
+			throw new IllegalArgumentException("consumer = null");
 		ResultSet rs = null;
 		try {
-			PreparedStatement stmt = prepareStatement(
-					"select employee_id, id, checked_in, checked_out"
-					+ " from attendance"
-					+ " where checked_in < ? and (checked_out > ? or checked_out is null)"
+			partitionsLock.readLock().lock();
+			try {
+				AttendancePartition[] partitions = selectPartitionsOverlapping(from, to);
+				PreparedStatement stmt = prepareStatement("attendance.forEachAttendanceBetween", unionAll(
+						"id, employee_id, checked_in, checked_out",
+						"checked_in < ? and (checked_out > ? or checked_out is null)",
+						partitions, "employee_id, id"));
+				for (int i = 0; i <= partitions.length; i++) {
+					stmt.setTimestamp(2 * i + 1, new Timestamp(to));
+					stmt.setTimestamp(2 * i + 2, new Timestamp(from));
+				}
+				stmt.setFetchSize(fetchSize);
+				rs = stmt.executeQuery();
+			} finally {
+				partitionsLock.readLock().unlock();
+			}
+			while (rs.next()) {
+				Timestamp ts_checkedOut = rs.getTimestamp(4);
+				long millis_checkedOut = ts_checkedOut == null ? 0 : ts_checkedOut.getTime();
+				consumer.accept(rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime(), millis_checkedOut);
+			}
+		} catch (SQLException ex) {
+			throw failure(ex, "forEachAttendanceBetween(...) = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
+	/**
+	 * Builds a query selecting {@code columns} of the rows matching the {@code where} condition
+	 * from the attendance table and from each of the given {@code partitions}. The condition is repeated
+	 * for each table, so its parameters are to be set once per table, the attendance table first.
+	 * @param orderBy {@code null} if the order does not matter
+	 */
+	private static String unionAll(String columns, String where, AttendancePartition[] partitions, String orderBy) {
+		StringBuilder sb = new StringBuilder("select ").append(columns).append(" from attendance where ").append(where);
+		for (AttendancePartition partition : partitions) {
+			sb.append(" union all select ").append(columns)
+					.append(" from ").append(partition.getTableName()).append(" where ").append(where);
+		}
+		if (orderBy == null)
+			return sb.toString();
+		if (partitions.length == 0)
+			return sb.append(" order by ").append(orderBy).toString();
+		return "select * from (" + sb + ") order by " + orderBy;
+	}
+
+	/**
+	 * Partition pruning: only the partitions which may contain attendance during the given period are queried.
+	 * @param from the timestamp of the beginning of the interval (inclusive)
+	 * @param to the timestamp of the end of the interval (exclusive)
+	 */
+	private AttendancePartition[] selectPartitionsOverlapping(long from, long to) throws SQLException {
+		return selectPartitionsOverlapping(from, to, Long.MIN_VALUE);
+	}
+
+	/** @param minCheckedIn the partitions of the months ending before this timestamp are skipped too */
+	private AttendancePartition[] selectPartitionsOverlapping(long from, long to, long minCheckedIn)
+			throws SQLException {
+		AttendancePartition[] all = partitions;
+		if (all == null)
+			partitions = all = selectPartitions();
+		int n = 0;
+		AttendancePartition[] result = new AttendancePartition[all.length];
+		for (AttendancePartition partition : all) {
+			if (partition.overlaps(from, to)
+					&& AttendancePartition.startOf(partition.getMonth().plusMonths(1)) > minCheckedIn)
+				result[n++] = partition;
+		}
+		return n == all.length ? all : Arrays.copyOf(result, n);
+	}
+
+	private AttendancePartition[] selectPartitions() throws SQLException {
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.selectPartitions",
+					"select month_start, max_checked_out from attendance_partition order by month_start");
+			rs = stmt.executeQuery();
+			List<AttendancePartition> result = new ArrayList<>();
+			while (rs.next()) {
+				result.add(new AttendancePartition(
+						AttendancePartition.monthOf(rs.getTimestamp(1).getTime()), rs.getTimestamp(2).getTime()));
+			}
+			return result.toArray(new AttendancePartition[result.size()]);
+		} finally {
+			close(rs);
+		}
+	}
+
+	/**
+	 * Moves the attendance checked in before the month of the given timestamp into the monthly partitions.
+	 * Only the attendance checked out and already {@link #rollUp rolled up} is moved, so the attendance table
+	 * keeps every open attendance. Queries do not see an attendance being moved until the move is committed,
+	 * and the move of a month is a single transaction.
+	 * @return the number of moved rows
+	 */
+	public int archiveMonthsBefore(long timestamp) {
+		info("archiveMonthsBefore({})", new Timestamp(timestamp));
+		YearMonth until = AttendancePartition.monthOf(timestamp);
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.archiveMonthsBefore",
+					"select min(checked_in) from attendance where checked_in < ? and checked_out is not null");
+			stmt.setTimestamp(1, new Timestamp(AttendancePartition.startOf(until)));
+			rs = stmt.executeQuery();
+			rs.next();
+			Timestamp minCheckedIn = rs.getTimestamp(1);
+			close(rs);
+			int moved = 0;
+			if (minCheckedIn != null) {
+				for (YearMonth month = AttendancePartition.monthOf(minCheckedIn.getTime());
+						month.isBefore(until); month = month.plusMonths(1))
+					moved += archiveMonth(month);
+			}
+			info("archiveMonthsBefore = success: {} moved", moved);
+			return moved;
+		} catch (SQLException ex) {
+			partitions = null;
+			throw failure(ex, "archiveMonthsBefore = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
+	private int archiveMonth(YearMonth month) throws SQLException {
+		String table = AttendancePartition.tableName(month);
+		// DDL commits implicitly, so it precedes the transaction
+		prepareStatement("attendance.archiveMonth.createTable", "create table if not exists " + table + "("
+				+ "id bigint not null primary key,"
+				+ " employee_id bigint not null,"
+				+ " checked_in timestamp not null,"
+				+ " checked_out timestamp not null)").executeUpdate();
+		prepareStatement("attendance.archiveMonth.createEmployeeIndex",
+				"create index if not exists " + table + "_employee_id"
+				+ " on " + table + "(employee_id, checked_in)").executeUpdate();
+		prepareStatement("attendance.archiveMonth.createCheckedInIndex",
+				"create index if not exists " + table + "_checked_in"
+				+ " on " + table + "(checked_in)").executeUpdate();
+
+		disableAutoCommit();
+		PreparedStatement stmt = prepareStatement("attendance.archiveMonth.copy",
+				"insert into " + table + "(id, employee_id, checked_in, checked_out)"
+				+ " select id, employee_id, checked_in, checked_out from attendance a"
+				+ " where checked_in >= ? and checked_in < ? and checked_out is not null"
+				+ " and not exists (select 1 from attendance_log l where l.attendance_id = a.id"
+				+ " and l.seq > (select last_seq from attendance_daily_state))");
+		stmt.setTimestamp(1, new Timestamp(AttendancePartition.startOf(month)));
+		stmt.setTimestamp(2, new Timestamp(AttendancePartition.startOf(month.plusMonths(1))));
+		int moved = stmt.executeUpdate();
+		if (moved == 0) {
+			commitAndEnableAutoCommit();
+			return 0;
+		}
+		stmt = prepareStatement("attendance.archiveMonth.delete",
+				"delete from attendance where id in (select id from " + table + ")");
+		int deleted = stmt.executeUpdate();
+		if (deleted != moved)
+			throw new SQLException(table + ": " + moved + " rows copied but " + deleted + " deleted");
+		stmt = prepareStatement("attendance.archiveMonth.catalog",
+				"merge into attendance_partition(name, month_start, max_checked_out) key(name)"
+				+ " select ?, ?, max(checked_out) from " + table);
+		stmt.setString(1, table);
+		stmt.setTimestamp(2, new Timestamp(AttendancePartition.startOf(month)));
+		stmt.executeUpdate();
+		partitionsLock.writeLock().lock();
+		try {
+			commitAndEnableAutoCommit();
+			partitions = null; // reloaded by the next query
+		} finally {
+			partitionsLock.writeLock().unlock();
+		}
+		info("archiveMonth({}) = success: {} moved", table, moved);
+		return moved;
+	}
+
+	/**
+	 * Pushes the closed attendance checked in before the given timestamp to the {@code consumer} row by row
+	 * in the order of {@code employeeId}, {@code checkedIn} and then {@code id}. Used by {@link AttendanceArchive#export}.
+	 */
+	void forEachAttendanceCheckedInBefore(long before, AttendanceConsumer consumer) {
+		assert consumer != null;
+		ResultSet rs = null;
+		try {
+			partitionsLock.readLock().lock();
+			try {
+				AttendancePartition[] partitions = selectPartitionsOverlapping(Long.MIN_VALUE, before);
+				PreparedStatement stmt = prepareStatement("attendance.forEachAttendanceCheckedInBefore", unionAll(
+						"id, employee_id, checked_in, checked_out",
+						"checked_in < ? and checked_out is not null",
+						partitions, "employee_id, checked_in, id"));
+				for (int i = 0; i <= partitions.length; i++)
+					stmt.setTimestamp(i + 1, new Timestamp(before));
+				stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+				rs = stmt.executeQuery();
+			} finally {
+				partitionsLock.readLock().unlock();
+			}
+			while (rs.next())
+				consumer.accept(rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime(), rs.getTimestamp(4).getTime());
+		} catch (SQLException ex) {
+			throw failure(ex, "forEachAttendanceCheckedInBefore(...) = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
+	/** Pushes the open attendance checked in before the given timestamp in the order of {@code employeeId} and {@code id} */
+	void forEachOpenAttendanceCheckedInBefore(long before, AttendanceConsumer consumer) {
+		assert consumer != null;
+		ResultSet rs = null;
+		try {
+			// the open attendance is never moved to a partition
+			PreparedStatement stmt = prepareStatement("attendance.forEachOpenAttendanceCheckedInBefore",
+					"select id, employee_id, checked_in from attendance"
+					+ " where checked_out is null and checked_in < ?"
 					+ " order by employee_id, id");
-			stmt.setTimestamp(1, new Timestamp(to));
-			stmt.setTimestamp(2, new Timestamp(from));
+			stmt.setTimestamp(1, new Timestamp(before));
 			rs = stmt.executeQuery();
+			while (rs.next())
+				consumer.accept(rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime(), 0);
+		} catch (SQLException ex) {
+			throw failure(ex, "forEachOpenAttendanceCheckedInBefore(...) = fail");
+		} finally {
+			close(rs);
+		}
+	}
 
-			Map<Long, AttendanceDTO[]> result = new HashMap<>();
-			if (!rs.next())
-				return result;
-
-			List<AttendanceDTO> attendance = new ArrayList<>();
-			long prevEmployeeId = rs.getLong(1);
-			do {
-				long employeeId = rs.getLong(1);
-				if (prevEmployeeId != employeeId) {
-					result.put(prevEmployeeId, attendance.toArray(new AttendanceDTO[attendance.size()]));
-					attendance.clear();
-					prevEmployeeId = employeeId;
-				}
+	/**
+	 * Take the watermark before selecting a result, and pass it to {@link #selectAllEmployeesAttendanceChangedBetween}
+	 * later to get what has changed since then.
+	 * @return Never {@code null}
+	 */
+	public AttendanceWatermark selectWatermark() {
+		AttendanceWatermark watermark = readWatermark();
+		synchronized (watermarksInUse) {
+			watermarksInUse.add(watermark);
+		}
+		return watermark;
+	}
+
+	private AttendanceWatermark readWatermark() {
+		ResultSet rs = null;
+		// ids and seqs are taken before commit; waiting for the writers in flight ensures
+		// no row with an id or seq less than the watermark gets committed afterwards
+		writersLock.writeLock().lock();
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.selectWatermark",
+					"select (select coalesce(max(id), 0) from attendance),"
+					+ " (select coalesce(max(seq), 0) from attendance_log)");
+			rs = stmt.executeQuery();
+			rs.next();
+			return new AttendanceWatermark(rs.getLong(1), rs.getLong(2));
+		} catch (SQLException ex) {
+			throw failure(ex, "selectWatermark = fail");
+		} finally {
+			writersLock.writeLock().unlock();
+			close(rs);
+		}
+	}
+
+	/**
+	 * Selects the attendance during the given period that has been either checked in or checked out
+	 * after the {@code since} watermark was taken and before the {@code until} one was.
+	 * @param from the timestamp of the beginning of the interval (inclusive)
+	 * @param to the timestamp of the end of the interval (exclusive)
+	 * @return Never {@code null}
+	 */
+	public AttendanceColumns selectAllEmployeesAttendanceChangedBetween(long from, long to,
+			AttendanceWatermark since, AttendanceWatermark until) {
+		if (to <= from)
+			throw new IllegalArgumentException("to must be greater than from");
+		if (since == null)
+			throw new IllegalArgumentException("since = null");
+		if (until == null)
+			throw new IllegalArgumentException("until = null");
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.selectAllEmployeesAttendanceChangedBetween",
+					"select id, employee_id, checked_in, checked_out"
+					+ " from attendance"
+					+ " where (id > ? and id <= ?"
+					+ " or id in (select attendance_id from attendance_log where seq > ? and seq <= ?))"
+					+ " and checked_in < ? and (checked_out > ? or checked_out is null)"
+					+ " order by employee_id, id");
+			stmt.setLong(1, since.getLastId());
+			stmt.setLong(2, until.getLastId());
+			stmt.setLong(3, since.getLastSeq());
+			stmt.setLong(4, until.getLastSeq());
+			stmt.setTimestamp(5, new Timestamp(to));
+			stmt.setTimestamp(6, new Timestamp(from));
+			stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+			rs = stmt.executeQuery();
+			AttendanceColumns.Builder result = new AttendanceColumns.Builder();
+			while (rs.next()) {
 				Timestamp ts_checkedOut = rs.getTimestamp(4);
 				long millis_checkedOut = ts_checkedOut == null ? 0 : ts_checkedOut.getTime();
-				attendance.add(new AttendanceDTO(rs.getLong(2), employeeId,
-						rs.getTimestamp(3).getTime(), millis_checkedOut));
-			} while (rs.next());
-			result.put(prevEmployeeId, attendance.toArray(new AttendanceDTO[attendance.size()]));
-			return result;
+				result.accept(rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime(), millis_checkedOut);
+			}
+			return result.build();
+		} catch (SQLException ex) {
+			throw failure(ex, "selectAllEmployeesAttendanceChangedBetween(...) = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
+	/**
+	 * Rolls up the attendance checked out since the previous roll up into the daily attendance.
+	 * @param maxCheckOuts the max number of check outs rolled up in this transaction
+	 * @return the number of check outs rolled up; less than {@code maxCheckOuts} means the roll up is up to date
+	 */
+	int rollUp(int maxCheckOuts) {
+		if (maxCheckOuts <= 0)
+			throw new IllegalArgumentException("maxCheckOuts must be greater than 0");
+		// the log records committed later than the watermark was taken have greater seqs
+		AttendanceWatermark until = readWatermark();
+		ResultSet rs = null;
+		try {
+			disableAutoCommit();
+			PreparedStatement stmt = prepareStatement("attendance.rollUp.lock",
+					"select last_seq from attendance_daily_state for update");
+			rs = stmt.executeQuery();
+			rs.next();
+			long lastSeq = rs.getLong(1);
+			close(rs);
+
+			stmt = prepareStatement("attendance.rollUp.select",
+					"select l.seq, a.employee_id, a.checked_in, a.checked_out"
+					+ " from attendance_log l join attendance a on a.id = l.attendance_id"
+					+ " where l.seq > ? and l.seq <= ?"
+					+ " order by l.seq"
+					+ " limit ?");
+			stmt.setLong(1, lastSeq);
+			stmt.setLong(2, until.getLastSeq());
+			stmt.setInt(3, maxCheckOuts);
+			rs = stmt.executeQuery();
+			Set<EmployeeDay> days = new HashSet<>();
+			int n = 0;
+			while (rs.next()) {
+				n++;
+				lastSeq = rs.getLong(1);
+				long employeeId = rs.getLong(2);
+				LocalDate day = toLocalDate(rs.getTimestamp(3).getTime());
+				// the check out is exclusive, so a shift ending at midnight does not overlap the next day
+				LocalDate lastDay = toLocalDate(Math.max(rs.getTimestamp(4).getTime() - 1, rs.getTimestamp(3).getTime()));
+				for (; !day.isAfter(lastDay); day = day.plusDays(1))
+					days.add(new EmployeeDay(employeeId, day));
+			}
+			close(rs);
+			if (n == 0) {
+				commitAndEnableAutoCommit();
+				return 0;
+			}
+
+			for (EmployeeDay day : days)
+				rollUpDay(day.employeeId, day.day);
+			stmt = prepareStatement("attendance.rollUp.advance", "update attendance_daily_state set last_seq = ?");
+			stmt.setLong(1, lastSeq);
+			stmt.executeUpdate();
+			commitAndEnableAutoCommit();
+			info("rollUp = success: {} check outs, {} days", n, days.size());
+			return n;
+		} catch (SQLException ex) {
+			throw failure(ex, "rollUp = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
+	/**
+	 * Deletes the attendance_log records both rolled up and not needed by any watermark in use.
+	 * The seqs never go back, so the log emptied by the pruning does not break the watermarks taken afterwards.
+	 * @param maxRecords the max number of records deleted in this transaction
+	 * @return the number of records deleted; less than {@code maxRecords} means nothing is left to prune
+	 */
+	int pruneLog(int maxRecords) {
+		if (maxRecords <= 0)
+			throw new IllegalArgumentException("maxRecords must be greater than 0");
+		long minSeqInUse = Long.MAX_VALUE;
+		synchronized (watermarksInUse) {
+			for (AttendanceWatermark watermark : watermarksInUse)
+				minSeqInUse = Math.min(minSeqInUse, watermark.getLastSeq());
+		}
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.pruneLog",
+					"delete from attendance_log"
+					+ " where seq <= least(?, (select last_seq from attendance_daily_state))"
+					+ " limit ?");
+			stmt.setLong(1, minSeqInUse);
+			stmt.setInt(2, maxRecords);
+			int n = stmt.executeUpdate();
+			if (n > 0)
+				info("pruneLog = success: {} deleted", n);
+			return n;
+		} catch (SQLException ex) {
+			throw failure(ex, "pruneLog = fail");
+		}
+	}
+
+	/** Recomputes the daily attendance of the employee from scratch */
+	private void rollUpDay(long employeeId, LocalDate day) throws SQLException {
+		long dayStart = toMillis(day);
+		long dayEnd = toMillis(day.plusDays(1));
+		long firstIn = Long.MAX_VALUE;
+		long lastOut = 0;
+		long workedMillis = 0;
+		int shiftCount = 0;
+		ResultSet rs = null;
+		try {
+			partitionsLock.readLock().lock();
+			try {
+				AttendancePartition[] partitions = selectPartitionsOverlapping(dayStart, dayEnd);
+				PreparedStatement stmt = prepareStatement("attendance.rollUpDay.select", unionAll(
+						"checked_in, checked_out",
+						"employee_id = ? and checked_in < ? and checked_out > ?",
+						partitions, null));
+				for (int i = 0; i <= partitions.length; i++) {
+					stmt.setLong(3 * i + 1, employeeId);
+					stmt.setTimestamp(3 * i + 2, new Timestamp(dayEnd));
+					stmt.setTimestamp(3 * i + 3, new Timestamp(dayStart));
+				}
+				rs = stmt.executeQuery();
+			} finally {
+				partitionsLock.readLock().unlock();
+			}
+			while (rs.next()) {
+				long checkedIn = rs.getTimestamp(1).getTime();
+				long checkedOut = rs.getTimestamp(2).getTime();
+				firstIn = Math.min(firstIn, checkedIn);
+				lastOut = Math.max(lastOut, checkedOut);
+				workedMillis += Math.min(checkedOut, dayEnd) - Math.max(checkedIn, dayStart);
+				shiftCount++;
+			}
+		} finally {
+			close(rs);
+		}
+
+		PreparedStatement stmt;
+		if (shiftCount == 0) {
+			stmt = prepareStatement("attendance.rollUpDay.delete",
+					"delete from attendance_daily where employee_id = ? and day = ?");
+			stmt.setLong(1, employeeId);
+			stmt.setDate(2, Date.valueOf(day));
+		} else {
+			stmt = prepareStatement("attendance.rollUpDay.merge",
+					"merge into attendance_daily(employee_id, day, first_in, last_out, worked_millis, shift_count)"
+					+ " key(employee_id, day) values(?, ?, ?, ?, ?, ?)");
+			stmt.setLong(1, employeeId);
+			stmt.setDate(2, Date.valueOf(day));
+			stmt.setTimestamp(3, new Timestamp(firstIn));
+			stmt.setTimestamp(4, new Timestamp(lastOut));
+			stmt.setLong(5, workedMillis);
+			stmt.setInt(6, shiftCount);
+		}
+		stmt.executeUpdate();
+	}
+
+	private static LocalDate toLocalDate(long timestamp) {
+		return Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	private static long toMillis(LocalDate day) {
+		return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	private static final class EmployeeDay {
+		private final long employeeId;
+		private final LocalDate day;
+
+		private EmployeeDay(long employeeId, LocalDate day) {
+			this.employeeId = employeeId;
+			this.day = day;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof EmployeeDay))
+				return false;
+			EmployeeDay that = (EmployeeDay)o;
+			return employeeId == that.employeeId && day.equals(that.day);
+		}
+
+		@Override
+		public int hashCode() { return LongHashTable.hash(employeeId) * 31 + day.hashCode(); }
+	}
+
+	/**
+	 * Reads the daily attendance rolled up by the {@link RollupMaintainer}, so that a long period costs
+	 * a row per day instead of the raw attendance. Only the attendance checked out is rolled up.
+	 * @param from the timestamp of the beginning of the interval (inclusive); the day it falls on is included
+	 * @param to the timestamp of the end of the interval (exclusive)
+	 * @return Never {@code null}; ordered by day
+	 */
+	public DailyAttendanceDTO[] selectEmployeeDailyAttendanceBetween(long employeeId, long from, long to) {
+		if (to <= from)
+			throw new IllegalArgumentException("to must be greater than from");
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("attendance.selectEmployeeDailyAttendanceBetween",
+					"select day, first_in, last_out, worked_millis, shift_count"
+					+ " from attendance_daily"
+					+ " where employee_id = ? and day >= ? and day < ?"
+					+ " order by day");
+			stmt.setLong(1, employeeId);
+			stmt.setDate(2, Date.valueOf(toLocalDate(from)));
+			stmt.setDate(3, Date.valueOf(toLocalDate(to - 1).plusDays(1)));
+			rs = stmt.executeQuery();
+			List<DailyAttendanceDTO> result = new ArrayList<>();
+			while (rs.next()) {
+				result.add(new DailyAttendanceDTO(employeeId, toMillis(rs.getDate(1).toLocalDate()),
+						rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime(), rs.getLong(4), rs.getInt(5)));
+			}
+			return result.toArray(new DailyAttendanceDTO[result.size()]);
 		} catch (SQLException ex) {
-			throw failure(ex, "selectAllEmployeesAttendanceBetween(...) = fail");
+			throw failure(ex, "selectEmployeeDailyAttendanceBetween({}, ...) = fail", employeeId);
 		} finally {
 			close(rs);
 		}
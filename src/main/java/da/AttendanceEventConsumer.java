@@ -0,0 +1,14 @@
+package da;
+
+/**
+ * Receives the check in/out events of an {@link AttendanceJournal} one by one as primitives.
+ * @author danis.tazeev@gmail.com
+ */
+@FunctionalInterface
+public interface AttendanceEventConsumer {
+	/**
+	 * @param rowId the {@code id} of the attendance row checked in or out
+	 * @param checkIn {@code true} for a check in, {@code false} for a check out
+	 */
+	void accept(long rowId, long employeeId, boolean checkIn, long timestamp);
+}
@@ -0,0 +1,325 @@
+package da;
+
+import shared.Counter;
+import shared.Logging;
+import shared.Metrics;
+import shared.Timer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of the check in/out events committed to the DB. It is the audit trail of the attendance,
+ * kept apart from the text log, and the source the in-memory state can be rebuilt from by {@link #replay}.
+ * The events are buffered in memory and a background thread writes and forces them to the disk every
+ * {@code syncMillis}, so a commit never waits for the disk; a crash loses the events of the last period at most.
+ * A buffer filled up before the sync is handed to the background thread at once. If the disk falls so far behind
+ * that {@value #MAX_FULL_BUFFERS} buffers are waiting, the events are dropped and counted as {@code journal.lost}.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: magic and version. The fixed-width records of
+ * {@value #RECORD_SIZE} bytes follow in the order of commit: {@code rowId, employeeId, timestamp}, the kind
+ * ({@code 1} check in, {@code 2} check out), 3 reserved bytes and the CRC32 of the preceding bytes of the record.
+ * A torn tail left by a crash fails the CRC and is discarded when the journal is opened again.
+ * @author danis.tazeev@gmail.com
+ */
+public final class AttendanceJournal implements AutoCloseable {
+	private static final Logging log = new Logging(AttendanceJournal.class);
+	private static final int MAGIC = 0x41544a4e; // ATJN
+	private static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int RECORD_SIZE = 32;
+	private static final int CRC_OFFSET = 28;
+	private static final byte CHECK_IN = 1;
+	private static final byte CHECK_OUT = 2;
+	private static final int BUFFER_SIZE = RECORD_SIZE * 2048;
+	private static final int MAX_FULL_BUFFERS = 16;
+	private static final Counter records = Metrics.counter("journal.records");
+	private static final Counter lost = Metrics.counter("journal.lost");
+	private static final Timer syncs = Metrics.timer("journal.sync", "Writing and forcing a batch of journal records");
+	private static volatile AttendanceJournal active;
+
+	private final FileChannel ch;
+	private final long syncMillis;
+	private final Thread thread;
+	/** Guarded by {@code this} */
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+	/** The buffers filled up and waiting to be written in the order they were filled; guarded by {@code this} */
+	private final ArrayDeque<ByteBuffer> full = new ArrayDeque<>();
+	/** The buffers written and ready for reuse; guarded by {@code this} */
+	private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+	/**
+	 * Whether some records have been written but not forced yet.
+	 * Confined to the background thread, and to {@link #close} once the thread is over.
+	 */
+	private boolean unforced;
+	private final CRC32 crc = new CRC32();
+	private boolean closed;
+
+	/**
+	 * Opens the journal {@code file} for appending, creating it if absent, and makes {@link AttendanceDAO}
+	 * record the events committed from now on into it.
+	 * @param syncMillis how often the events are forced to the disk
+	 * @throws IllegalStateException if another journal is open
+	 */
+	public AttendanceJournal(Path file, long syncMillis) throws IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file = null");
+		if (syncMillis <= 0)
+			throw new IllegalArgumentException("syncMillis must be greater than 0");
+		log.info("AttendanceJournal({}, ...)", file);
+		this.syncMillis = syncMillis;
+		ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			recover();
+			synchronized (AttendanceJournal.class) {
+				if (active != null)
+					throw new IllegalStateException("Another AttendanceJournal is open");
+				active = this;
+			}
+		} catch (IOException | RuntimeException ex) {
+			DAO.close(ch);
+			throw ex;
+		}
+		thread = new Thread(this::run, "Attendance Journal");
+		thread.setDaemon(true);
+		thread.start();
+		log.info("AttendanceJournal = success: {} records", (ch.position() - HEADER_SIZE) / RECORD_SIZE);
+	}
+
+	/** Writes the header into an empty file, otherwise checks it and discards the torn tail, if any */
+	private void recover() throws IOException {
+		long size = ch.size();
+		if (size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+			header.flip();
+			while (header.hasRemaining())
+				ch.write(header);
+			ch.force(true);
+			return;
+		}
+		checkHeader(ch);
+		long end = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		for (; end > HEADER_SIZE; end -= RECORD_SIZE) {
+			record.clear();
+			while (record.hasRemaining() && ch.read(record, end - RECORD_SIZE + record.position()) >= 0);
+			if (isValid(record, 0, crc))
+				break;
+		}
+		if (end < size) {
+			log.warn("Discarding the torn tail of the journal: {} bytes", size - end);
+			ch.truncate(end);
+			ch.force(false);
+		}
+		ch.position(end);
+	}
+
+	private static void checkHeader(FileChannel ch) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining() && ch.read(header, header.position()) >= 0);
+		if (header.hasRemaining() || header.getInt(0) != MAGIC)
+			throw new IOException("Not an attendance journal");
+		if (header.getInt(4) != VERSION)
+			throw new IOException("Unsupported journal version: " + header.getInt(4));
+	}
+
+	private static boolean isValid(ByteBuffer buf, int pos, CRC32 crc) {
+		byte kind = buf.get(pos + 24);
+		if (kind != CHECK_IN && kind != CHECK_OUT)
+			return false;
+		crc.reset();
+		crc.update(buf.array(), buf.arrayOffset() + pos, CRC_OFFSET);
+		return buf.getInt(pos + CRC_OFFSET) == (int)crc.getValue();
+	}
+
+	/** Invoked by {@link AttendanceDAO} each time a check in is committed */
+	static void checkedIn(long rowId, long employeeId, long timestamp) {
+		AttendanceJournal j = active;
+		if (j != null)
+			j.append(rowId, employeeId, CHECK_IN, timestamp);
+	}
+
+	/** Invoked by {@link AttendanceDAO} each time a check out is committed */
+	static void checkedOut(long rowId, long employeeId, long timestamp) {
+		AttendanceJournal j = active;
+		if (j != null)
+			j.append(rowId, employeeId, CHECK_OUT, timestamp);
+	}
+
+	/** Never writes to the disk, since the caller holds back the other writers to the DB meanwhile */
+	private synchronized void append(long rowId, long employeeId, byte kind, long timestamp) {
+		if (closed) {
+			// committed while closing
+			lost.increment();
+			return;
+		}
+		if (pending.remaining() < RECORD_SIZE) {
+			if (full.size() == MAX_FULL_BUFFERS) {
+				lost.increment();
+				return;
+			}
+			// filled up before the sync; the background thread writes it without waiting for the disk
+			full.add(pending);
+			pending = free.isEmpty() ? ByteBuffer.allocate(BUFFER_SIZE) : free.poll();
+			notify();
+		}
+		int pos = pending.position();
+		pending.putLong(rowId).putLong(employeeId).putLong(timestamp).put(kind).put((byte)0).putShort((short)0);
+		crc.reset();
+		crc.update(pending.array(), pending.arrayOffset() + pos, CRC_OFFSET);
+		pending.putInt((int)crc.getValue());
+		records.increment();
+	}
+
+	/**
+	 * Writes the full buffers and then the pending one. Called by the background thread only,
+	 * and by {@link #close} once the thread is over.
+	 * @param force whether to force the records written so far to the disk
+	 */
+	private void flush(boolean force) {
+		long t0 = System.nanoTime();
+		while (true) {
+			ByteBuffer out;
+			synchronized (this) {
+				out = full.poll();
+				if (out == null) {
+					if (pending.position() == 0)
+						break;
+					out = pending;
+					pending = free.isEmpty() ? ByteBuffer.allocate(BUFFER_SIZE) : free.poll();
+				}
+			}
+			write(out);
+			synchronized (this) {
+				free.add(out);
+			}
+		}
+		if (force && unforced) {
+			try {
+				ch.force(false);
+				unforced = false;
+			} catch (IOException ex) {
+				log.error(ex, "flush = fail: the records written may be lost");
+			}
+		}
+		syncs.record(System.nanoTime() - t0);
+	}
+
+	private void write(ByteBuffer out) {
+		long start = -1;
+		out.flip();
+		try {
+			start = ch.position();
+			while (out.hasRemaining())
+				ch.write(out);
+			unforced = true;
+		} catch (IOException ex) {
+			int n = out.limit() / RECORD_SIZE;
+			lost.add(n);
+			log.error(ex, "flush = fail: {} records lost", n);
+			// a partially written record would misalign the records appended afterwards
+			if (start >= 0) {
+				try {
+					ch.truncate(start);
+					ch.position(start);
+				} catch (IOException ignore) {}
+			}
+		} finally {
+			out.clear();
+		}
+	}
+
+	/** Waits until either the sync is due or a buffer has filled up. @return {@code false} if closed */
+	private synchronized boolean awaitSync(long deadline) {
+		long remaining;
+		while (!closed && full.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException ex) {
+				return false;
+			}
+		}
+		return !closed;
+	}
+
+	private void run() {
+		long deadline = System.currentTimeMillis() + syncMillis;
+		while (awaitSync(deadline)) {
+			boolean due = System.currentTimeMillis() >= deadline;
+			flush(due);
+			if (due)
+				deadline = System.currentTimeMillis() + syncMillis;
+		}
+	}
+
+	/**
+	 * Forces the events recorded so far to the disk and closes the file.
+	 * Close after {@link AttendanceWriter}, so that the events it commits while closing are recorded.
+	 */
+	@Override
+	public void close() {
+		synchronized (AttendanceJournal.class) {
+			if (active == this)
+				active = null;
+		}
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notify();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+		flush(true);
+		try {
+			ch.close();
+		} catch (IOException ex) {
+			log.warn(ex, "Failed to close the journal");
+		}
+	}
+
+	/**
+	 * Pushes the events of the journal {@code file} to the {@code consumer} in the order they were committed.
+	 * The file may be open for appending meanwhile. Reading stops at a torn record, if any.
+	 * @return the number of events pushed
+	 */
+	public static long replay(Path file, AttendanceEventConsumer consumer) throws IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file = null");
+		if (consumer == null)
+			throw new IllegalArgumentException("consumer = null");
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			checkHeader(ch);
+			ch.position(HEADER_SIZE);
+			ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+			CRC32 crc = new CRC32();
+			long n = 0;
+			while (true) {
+				int read = ch.read(in);
+				in.flip();
+				for (int pos; in.remaining() >= RECORD_SIZE; in.position(pos + RECORD_SIZE), n++) {
+					pos = in.position();
+					if (!isValid(in, pos, crc)) {
+						log.warn("replay: torn record #{}; stopping", n);
+						return n;
+					}
+					consumer.accept(in.getLong(pos), in.getLong(pos + 8), in.get(pos + 24) == CHECK_IN, in.getLong(pos + 16));
+				}
+				in.compact();
+				if (read < 0) {
+					if (in.position() > 0)
+						log.warn("replay: incomplete record #{}; stopping", n);
+					return n;
+				}
+			}
+		}
+	}
+}
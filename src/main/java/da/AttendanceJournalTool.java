@@ -0,0 +1,150 @@
+package da;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays an {@link AttendanceJournal} from the command line:
+ * <ul>
+ * <li>{@code --dump} prints the events, one per line;</li>
+ * <li>{@code --open-shifts} prints the employees left checked in by the events, as
+ * {@link AttendanceDAO#warmUpOpenShifts} would load them;</li>
+ * <li>{@code --audit} compares the events with the attendance in the DB and prints each mismatch.</li>
+ * </ul>
+ * Exits with {@code 1} if the audit finds a mismatch, and with {@code 2} on a failure.
+ * @author danis.tazeev@gmail.com
+ */
+public final class AttendanceJournalTool {
+	private AttendanceJournalTool() { throw new AssertionError(); }
+
+	public static void main(String... args) {
+		if (args.length < 1 || args.length > 2
+				|| args.length == 2 && !Arrays.asList("--dump", "--open-shifts", "--audit").contains(args[1])) {
+			System.err.printf("Usage: java %s <journal file> [--dump | --open-shifts | --audit]%n",
+					AttendanceJournalTool.class.getName());
+			System.exit(2);
+		}
+		Path file = Paths.get(args[0]);
+		String mode = args.length == 2 ? args[1] : "--dump";
+		try {
+			switch (mode) {
+				case "--dump": dump(file, System.out); break;
+				case "--open-shifts": printOpenShifts(file, System.out); break;
+				default:
+					if (audit(file, System.out) > 0)
+						System.exit(1);
+			}
+		} catch (IOException ex) {
+			System.err.printf("Failed to read '%s': %s%n", file, ex);
+			System.exit(2);
+		} catch (RuntimeException ex) {
+			System.err.printf("Failed: %s%n", ex);
+			System.exit(2);
+		}
+	}
+
+	static void dump(Path file, PrintStream out) throws IOException {
+		long n = AttendanceJournal.replay(file, (rowId, employeeId, checkIn, timestamp) ->
+				out.printf("%s %-3s employee %d, attendance %d%n",
+						Instant.ofEpochMilli(timestamp), checkIn ? "in" : "out", employeeId, rowId));
+		out.printf("%d events%n", n);
+	}
+
+	static void printOpenShifts(Path file, PrintStream out) throws IOException {
+		OpenShiftRegistry open = new OpenShiftRegistry();
+		AttendanceJournal.replay(file, (rowId, employeeId, checkIn, timestamp) -> {
+			if (checkIn)
+				open.add(employeeId);
+			else
+				open.remove(employeeId);
+		});
+		long[] ids = open.toArray();
+		Arrays.sort(ids);
+		for (long id : ids)
+			out.println(id);
+		out.printf("%d employees checked in%n", ids.length);
+	}
+
+	/** The state of an attendance row as the journal tells it */
+	private static final class Row {
+		final long id;
+		long employeeId;
+		/** {@code 0} if the check in precedes the journal */
+		long checkedIn;
+		long checkedOut;
+		boolean inDb;
+
+		Row(long id) { this.id = id; }
+	}
+
+	/**
+	 * Compares the attendance rows mentioned by the journal with the DB, and looks for the rows checked in
+	 * since the journal started that it lacks. The events lost by a crash show up as mismatches.
+	 * @return the number of mismatches
+	 */
+	static int audit(Path file, PrintStream out) throws IOException {
+		LongObjectMap<Row> rows = new LongObjectMap<>();
+		List<Row> journaled = new ArrayList<>();
+		long[] period = {Long.MAX_VALUE, Long.MIN_VALUE};
+		AttendanceJournal.replay(file, (rowId, employeeId, checkIn, timestamp) -> {
+			Row row = rows.get(rowId);
+			if (row == null) {
+				rows.put(rowId, row = new Row(rowId));
+				journaled.add(row);
+			}
+			row.employeeId = employeeId;
+			if (checkIn)
+				row.checkedIn = timestamp;
+			else
+				row.checkedOut = timestamp;
+			period[0] = Math.min(period[0], timestamp);
+			period[1] = Math.max(period[1], timestamp);
+		});
+		if (journaled.isEmpty()) {
+			out.println("The journal is empty");
+			return 0;
+		}
+		int[] mismatches = {0};
+		long since = period[0];
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			dao.forEachAttendanceBetween(since, period[1] + 1, AttendanceDAO.DEFAULT_FETCH_SIZE,
+					(id, employeeId, checkedIn, checkedOut) -> {
+						Row row = rows.get(id);
+						if (row == null) {
+							if (checkedIn >= since) {
+								mismatches[0]++;
+								out.printf("Attendance %d of employee %d checked in at %s is not journaled%n",
+										id, employeeId, Instant.ofEpochMilli(checkedIn));
+							}
+							return;
+						}
+						row.inDb = true;
+						if (row.employeeId != employeeId || row.checkedIn != 0 && row.checkedIn != checkedIn
+								|| row.checkedOut != checkedOut) {
+							mismatches[0]++;
+							out.printf("Attendance %d differs: journal (%d, %s, %s), DB (%d, %s, %s)%n", id,
+									row.employeeId, instantOrNull(row.checkedIn), instantOrNull(row.checkedOut),
+									employeeId, Instant.ofEpochMilli(checkedIn), instantOrNull(checkedOut));
+						}
+					});
+		} finally {
+			DAO.terminate();
+		}
+		for (Row row : journaled) {
+			if (!row.inDb) {
+				mismatches[0]++;
+				out.printf("Attendance %d of employee %d is journaled but missing from the DB%n", row.id, row.employeeId);
+			}
+		}
+		out.printf("%d attendance rows journaled, %d mismatches%n", journaled.size(), mismatches[0]);
+		return mismatches[0];
+	}
+
+	private static Object instantOrNull(long timestamp) { return timestamp == 0 ? null : Instant.ofEpochMilli(timestamp); }
+}
@@ -0,0 +1,48 @@
+package da;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+
+/**
+ * A table holding the attendance checked out and checked in during a month, moved out of the attendance
+ * table by {@link AttendanceDAO#archiveMonthsBefore}. The attendance table keeps the recent attendance and
+ * every open one, so that its size does not grow with the history.
+ * @author danis.tazeev@gmail.com
+ */
+final class AttendancePartition {
+	private final YearMonth month;
+	private final long maxCheckedOut;
+
+	AttendancePartition(YearMonth month, long maxCheckedOut) {
+		assert month != null;
+		this.month = month;
+		this.maxCheckedOut = maxCheckedOut;
+	}
+
+	static String tableName(YearMonth month) {
+		return String.format("attendance_%04d%02d", month.getYear(), month.getMonthValue());
+	}
+
+	String getTableName() { return tableName(month); }
+	YearMonth getMonth() { return month; }
+
+	static long startOf(YearMonth month) {
+		return month.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	static YearMonth monthOf(long timestamp) {
+		return YearMonth.from(LocalDate.from(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault())));
+	}
+
+	/**
+	 * Since the partition holds the attendance checked in during the month, an attendance checked out
+	 * after the month still belongs to the partition. That is why the upper bound is the latest check out.
+	 * @param from the timestamp of the beginning of the interval (inclusive)
+	 * @param to the timestamp of the end of the interval (exclusive)
+	 */
+	boolean overlaps(long from, long to) {
+		return startOf(month) < to && maxCheckedOut > from;
+	}
+}
@@ -0,0 +1,20 @@
+package da;
+
+/**
+ * The position in the history of attendance changes: the greatest {@code id} of attendance and the greatest
+ * {@code seq} of the attendance_log (a record per checkOut) as of a moment. Everything changed after that moment
+ * has either a greater {@code id} or a greater {@code seq}.
+ * @author danis.tazeev@gmail.com
+ */
+public final class AttendanceWatermark {
+	private final long lastId;
+	private final long lastSeq;
+
+	AttendanceWatermark(long lastId, long lastSeq) {
+		this.lastId = lastId;
+		this.lastSeq = lastSeq;
+	}
+
+	long getLastId() { return lastId; }
+	long getLastSeq() { return lastSeq; }
+}
@@ -0,0 +1,152 @@
+package da;
+
+import shared.FailureException;
+import shared.Logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists check in/out events asynchronously. Events queued by any number of threads are written by
+ * a single background thread, which groups them into JDBC batches and commits each batch at once
+ * instead of paying a commit per event. The outcome of each event, including a violation of the
+ * checkIn/checkOut contract, is reported through the future returned for that event.
+ * @author danis.tazeev@gmail.com
+ */
+public final class AttendanceWriter implements AutoCloseable {
+	private static final Logging log = new Logging(AttendanceWriter.class);
+	private static final Event POISON = new Event(false, 0, 0);
+
+	private final int maxBatchSize;
+	private final long maxLingerNanos;
+	private final BlockingQueue<Event> queue;
+	private final Thread thread;
+	private volatile boolean closed;
+
+	/**
+	 * @param maxBatchSize the max number of events written in a single transaction
+	 * @param maxLingerMillis how long the first event of a batch waits for more events to join the batch
+	 * @param maxQueueSize the max number of events waiting to be written; further events are rejected
+	 */
+	public AttendanceWriter(int maxBatchSize, long maxLingerMillis, int maxQueueSize) {
+		if (maxBatchSize <= 0)
+			throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+		if (maxLingerMillis < 0)
+			throw new IllegalArgumentException("maxLingerMillis must be greater or equal to 0");
+		if (maxQueueSize <= 0)
+			throw new IllegalArgumentException("maxQueueSize must be greater than 0");
+		this.maxBatchSize = maxBatchSize;
+		maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+		queue = new LinkedBlockingQueue<>(maxQueueSize);
+		thread = new Thread(this::run, "Attendance Writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** @see AttendanceDAO#checkIn */
+	public CompletableFuture<Void> checkIn(long employeeId, long timestamp) {
+		return submit(new Event(true, employeeId, timestamp));
+	}
+
+	/** @see AttendanceDAO#checkOut */
+	public CompletableFuture<Void> checkOut(long employeeId, long timestamp) {
+		return submit(new Event(false, employeeId, timestamp));
+	}
+
+	private CompletableFuture<Void> submit(Event e) {
+		if (closed)
+			e.future.completeExceptionally(new IllegalStateException("AttendanceWriter closed"));
+		else if (!queue.offer(e))
+			e.future.completeExceptionally(log.error(new FailureException("DB busy"),
+					"submit = fail: {} events are waiting to be written", queue.size()));
+		return e.future;
+	}
+
+	/** @return the number of events waiting to be written */
+	public int getQueueSize() { return queue.size(); }
+
+	private void run() {
+		List<Event> batch = new ArrayList<>(maxBatchSize);
+		boolean poisoned = false;
+		while (!poisoned) {
+			try {
+				Event first = queue.take();
+				if (first == POISON)
+					break;
+				batch.add(first);
+				long deadline = System.nanoTime() + maxLingerNanos;
+				while (batch.size() < maxBatchSize) {
+					Event e = queue.poll(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+					if (e == null)
+						break;
+					if (e == POISON) {
+						poisoned = true;
+						break;
+					}
+					batch.add(e);
+				}
+			} catch (InterruptedException ex) {
+				poisoned = true; // write what has been collected so far and quit
+			}
+			if (!batch.isEmpty()) {
+				write(batch);
+				batch.clear();
+			}
+		}
+		// reject the events left, if any
+		for (Event e; (e = queue.poll()) != null; ) {
+			if (e != POISON)
+				e.future.completeExceptionally(new IllegalStateException("AttendanceWriter closed"));
+		}
+	}
+
+	private static void write(List<Event> batch) {
+		Event[] events = batch.toArray(new Event[batch.size()]);
+		Throwable[] failures;
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			failures = dao.write(events);
+		} catch (Throwable err) {
+			for (Event e : events)
+				e.future.completeExceptionally(err);
+			return;
+		}
+		for (int i = 0; i < events.length; i++) {
+			if (failures[i] == null)
+				events[i].future.complete(null);
+			else
+				events[i].future.completeExceptionally(failures[i]);
+		}
+	}
+
+	/** Writes the events queued so far and stops the background thread */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			queue.put(POISON);
+			thread.join();
+		} catch (InterruptedException ex) {
+			thread.interrupt();
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+	}
+
+	static final class Event {
+		final boolean checkIn;
+		final long employeeId;
+		final long timestamp;
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		Event(boolean checkIn, long employeeId, long timestamp) {
+			this.checkIn = checkIn;
+			this.employeeId = employeeId;
+			this.timestamp = timestamp;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package da;
+
+import shared.FailureException;
+import shared.Logging;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of connections that lets up to {@code maxSize} DAOs be active at the same time.
+ * Connections are opened lazily, validated when borrowed and closed after having been idle for too long.
+ * Install the pool with {@link DAO#usePool(ConnectionPool)} before the first DAO is instantiated.
+ * @author danis.tazeev@gmail.com
+ */
+public final class ConnectionPool implements ConnectionProvider {
+	private static final Logging log = new Logging(ConnectionPool.class);
+
+	private final String jdbcUrl;
+	private final int maxSize;
+	private final long acquireTimeoutMillis;
+	private final long maxIdleMillis;
+	private final int validationTimeoutSecs;
+
+	/** LIFO: the most recently released connection is borrowed first, so the rest age out and get evicted */
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+	private final ScheduledExecutorService evictor;
+	private int size; // the number of connections opened (both idle and borrowed)
+	private boolean terminated;
+
+	/**
+	 * @param maxSize the max number of connections opened at the same time
+	 * @param acquireTimeoutMillis how long to wait for a free connection before failing
+	 * @param maxIdleMillis idle connections are closed after this period of time;
+	 * {@code 0} means idle connections are never closed
+	 * @param validationTimeoutSecs the timeout passed to {@link java.sql.Connection#isValid(int)}
+	 * each time a connection is borrowed
+	 */
+	public ConnectionPool(int maxSize, long acquireTimeoutMillis, long maxIdleMillis, int validationTimeoutSecs) {
+		this(DAO.JDBC_URL, maxSize, acquireTimeoutMillis, maxIdleMillis, validationTimeoutSecs);
+	}
+
+	ConnectionPool(String jdbcUrl, int maxSize, long acquireTimeoutMillis,
+			long maxIdleMillis, int validationTimeoutSecs) {
+		if (jdbcUrl == null)
+			throw new IllegalArgumentException("jdbcUrl = null");
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("maxSize must be greater than 0");
+		if (acquireTimeoutMillis <= 0)
+			throw new IllegalArgumentException("acquireTimeoutMillis must be greater than 0");
+		if (maxIdleMillis < 0)
+			throw new IllegalArgumentException("maxIdleMillis must be greater or equal to 0");
+		if (validationTimeoutSecs < 0)
+			throw new IllegalArgumentException("validationTimeoutSecs must be greater or equal to 0");
+		this.jdbcUrl = jdbcUrl;
+		this.maxSize = maxSize;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.maxIdleMillis = maxIdleMillis;
+		this.validationTimeoutSecs = validationTimeoutSecs;
+		if (maxIdleMillis == 0)
+			evictor = null;
+		else {
+			evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "DB Pool Evictor");
+				t.setDaemon(true);
+				return t;
+			});
+			long period = Math.max(maxIdleMillis >> 1, 1);
+			evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public int getMaxSize() { return maxSize; }
+
+	/** @return the number of connections currently opened */
+	public synchronized int getSize() { return size; }
+
+	/** @return the number of connections currently opened and not borrowed */
+	public synchronized int getIdleCount() { return idle.size(); }
+
+	@Override
+	public PooledConnection acquire() {
+		long deadline = System.currentTimeMillis() + acquireTimeoutMillis;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				PooledConnection conn;
+				synchronized (this) {
+					while (!terminated && idle.isEmpty() && size >= maxSize) {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0)
+							throw log.error(new FailureException("DB busy"),
+									"acquire = fail: no connection released within {} ms", acquireTimeoutMillis);
+						try {
+							wait(remaining);
+						} catch (InterruptedException save) { // do not loose the interruption flag
+							interrupted = true;
+						}
+					}
+					if (terminated)
+						throw new FailureException("DB terminated");
+					conn = idle.pollFirst();
+					if (conn == null)
+						size++; // reserve a slot; the connection is opened outside of the lock
+				}
+				if (conn == null)
+					return open();
+				if (isValid(conn))
+					return conn;
+				discard(conn); // and try again
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt(); // re-raise the flag
+		}
+	}
+
+	private PooledConnection open() {
+		try {
+			return new PooledConnection(DriverManager.getConnection(jdbcUrl));
+		} catch (SQLException ex) {
+			synchronized (this) {
+				size--;
+				notify();
+			}
+			throw log.error(new FailureException("DB failure"),
+					Logging.concat("Failed to obtain a connection\nSQL error code: " + ex.getErrorCode(), ex));
+		}
+	}
+
+	private boolean isValid(PooledConnection conn) {
+		try {
+			return conn.get().isValid(validationTimeoutSecs);
+		} catch (SQLException ex) {
+			log.warn(ex, "Connection validation failed");
+			return false;
+		}
+	}
+
+	private void discard(PooledConnection conn) {
+		conn.close();
+		synchronized (this) {
+			size--;
+			notify();
+		}
+	}
+
+	@Override
+	public void release(PooledConnection conn) {
+		assert conn != null;
+		boolean close;
+		synchronized (this) {
+			close = terminated;
+			if (close)
+				size--;
+			else {
+				conn.markReleased();
+				idle.addFirst(conn);
+				notify();
+			}
+		}
+		if (close)
+			conn.close();
+	}
+
+	private void evictIdle() {
+		List<PooledConnection> evicted = new ArrayList<>();
+		synchronized (this) {
+			long threshold = System.currentTimeMillis() - maxIdleMillis;
+			// the oldest connections are at the tail
+			for (Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext(); ) {
+				PooledConnection conn = it.next();
+				if (conn.getReleasedAt() > threshold)
+					break;
+				it.remove();
+				size--;
+				evicted.add(conn);
+			}
+			if (!evicted.isEmpty())
+				notifyAll();
+		}
+		evicted.forEach(PooledConnection::close);
+	}
+
+	@Override
+	public void terminate() {
+		List<PooledConnection> closing;
+		synchronized (this) {
+			if (terminated)
+				return;
+			terminated = true;
+			closing = new ArrayList<>(idle);
+			size -= idle.size();
+			idle.clear();
+			notifyAll();
+		}
+		if (evictor != null)
+			evictor.shutdownNow();
+		closing.forEach(PooledConnection::close);
+	}
+}
@@ -0,0 +1,21 @@
+package da;
+
+/**
+ * A source of connections for {@link DAO}s. A connection is acquired by a DAO on construction
+ * and is released back when the DAO is closed. Implementations are thread-safe.
+ * @author danis.tazeev@gmail.com
+ */
+interface ConnectionProvider {
+	/**
+	 * Blocks until a connection is available.
+	 * @return Never {@code null}
+	 * @throws shared.FailureException if a connection could not be obtained
+	 */
+	PooledConnection acquire();
+
+	/** Returns the {@code conn} previously obtained with {@link #acquire()} */
+	void release(PooledConnection conn);
+
+	/** Closes all the connections. No connections can be acquired afterwards */
+	void terminate();
+}
@@ -1,65 +1,164 @@
 package da;
 
 import org.h2.Driver;
+import org.h2.api.ErrorCode;
 import shared.EnvironmentError;
 import shared.FailureException;
+import shared.Counter;
+import shared.Histogram;
 import shared.Logging;
+import shared.Metrics;
+import shared.Timer;
 
-import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.Statement;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static shared.Assert.filledAndTrimmed;
 import static shared.Assert.nullOrQuoted;
 
 /**
  * Descendants of this class are not thread-safe.
- * <b>WARN:</b> Descendants cannot run concurrently since this class (and
+ * <b>WARN:</b> By default descendants cannot run concurrently since this class (and
  * the descendants transitively) uses a single and the only DB connection.
+ * Install a {@link ConnectionPool} with {@link #usePool(ConnectionPool)} to let them run concurrently.
  * @author danis.tazeev@gmail.com
  */
 public abstract class DAO implements AutoCloseable {
-//	static final String JDBC_URL = "jdbc:h2:./ant-group-trial/db;DB_CLOSE_DELAY=0;MULTI_THREADED=FALSE;MVCC=TRUE;MV_STORE=TRUE";
-	static final String JDBC_URL = "jdbc:h2:./database/trial";
+	/** The system property overriding {@link #JDBC_URL}; MUST be set before the first DAO is used */
+	static final String JDBC_URL_PROPERTY = "trial.jdbc.url";
+	/**
+	 * MVCC lets concurrent connections read and write without locking whole tables.
+	 * DB_CLOSE_DELAY=-1 keeps the DB open while the pool has no connections opened.
+	 */
+	static final String JDBC_URL = System.getProperty(JDBC_URL_PROPERTY,
+			"jdbc:h2:./database/trial;MVCC=TRUE;DB_CLOSE_DELAY=-1");
 
-	private static final Connection CONN;
 	static {
 		try {
 			DriverManager.registerDriver(new Driver());
-			CONN = DriverManager.getConnection(JDBC_URL);
 		} catch (SQLException ex) {
-			// NOTE: Since H2 runs in the process the exception is thrown:
-			// - if the DB cannot be created in the working directory
-			// - the DB is already in use
 			throw new Logging(DAO.class).error(
 					new EnvironmentError("DB failure"),
-					concat("Failed to obtain a connection", ex));
+					concat("Failed to register the JDBC driver", ex));
+		}
+	}
+
+	private static ConnectionProvider provider;
+
+	private static final Timer connectionWait = Metrics.timer("dao.connectionWait", "Acquiring a connection");
+	private static final Timer commits = Metrics.timer("dao.commit", "Committing a transaction");
+	private static final Timer rollbacks = Metrics.timer("dao.rollback", "Rolling a transaction back");
+	private static final Counter failures = Metrics.counter("dao.failures");
+	/** The timer of each statement, named {@code dao.sql.<statement name>} */
+	private static final ConcurrentMap<String, Timer> statementTimers = new ConcurrentHashMap<>();
+	/** The threads blocked in the constructor waiting for a connection */
+	private static final AtomicInteger waiters = new AtomicInteger();
+	/** The number of waiters, including the arriving one, seen by each constructor */
+	private static final Histogram queueDepth = Metrics.histogram("dao.connectionQueueDepth");
+
+	static {
+		Metrics.gauge("dao.connectionWaiters", waiters::get);
+	}
+
+	private static final class ClassTimers {
+		private final Timer wait;
+		private final Timer hold;
+
+		private ClassTimers(String name) {
+			wait = Metrics.timer("dao.connectionWait." + name, "Acquiring a connection by " + name);
+			hold = Metrics.timer("dao.connectionHold." + name, "Holding a connection by " + name);
 		}
 	}
-	private static boolean connectionIsFree = true;
 
-	private final Map<String, PreparedStatement> stmts = new HashMap<>();
+	private static final ClassValue<ClassTimers> classTimers = new ClassValue<ClassTimers>() {
+		@Override
+		protected ClassTimers computeValue(Class<?> type) { return new ClassTimers(type.getSimpleName()); }
+	};
+
+	private static volatile SlowHolderWatchdog watchdog;
+
+	/**
+	 * Makes a background thread report each DAO holding its connection for longer than the threshold
+	 * along with the stack of the holding thread at that moment.
+	 * @param thresholdMillis {@code 0} stops reporting
+	 */
+	public static synchronized void watchSlowHolders(long thresholdMillis) {
+		if (thresholdMillis < 0)
+			throw new IllegalArgumentException("thresholdMillis must be greater or equal to 0");
+		if (watchdog != null)
+			watchdog.close();
+		watchdog = thresholdMillis > 0 ? new SlowHolderWatchdog(thresholdMillis) : null;
+	}
+
+	/** @param sql the SQL first prepared under the {@code name}; describes the timer */
+	private static Timer statementTimer(String name, String sql) {
+		Timer t = statementTimers.get(name);
+		if (t != null)
+			return t;
+		return statementTimers.computeIfAbsent(name, n -> Metrics.timer("dao.sql." + n, sql));
+	}
+
+	/**
+	 * Makes DAOs obtain their connections from the given {@code pool} instead of the single connection.
+	 * @throws IllegalStateException if a DAO has already been instantiated
+	 */
+	public static synchronized void usePool(ConnectionPool pool) {
+		if (pool == null)
+			throw new IllegalArgumentException("pool = null");
+		if (provider != null)
+			throw new IllegalStateException("The connection provider is already in use");
+		provider = pool;
+	}
+
+	private static synchronized ConnectionProvider provider() {
+		if (provider == null)
+			provider = new SingleConnectionProvider(JDBC_URL);
+		return provider;
+	}
+
+	private final ConnectionProvider connectionProvider;
+	private final PooledConnection conn;
 	private boolean autoCommit = true;
 	private boolean closed;
 	private String lastSql;
+	private volatile boolean cancelled;
+	private int queryTimeoutSecs;
+	/** The statement prepared last, that is the one executing if any; guarded by {@code this} */
+	private PreparedStatement current;
+	/**
+	 * Times the statement prepared last until the next one is prepared or the transaction ends,
+	 * so the time includes fetching the rows; {@code null} if none is running
+	 */
+	private Timer currentTimer;
+	private long currentStart;
+	private final ClassTimers timers = classTimers.get(getClass());
+	/** The thread constructing this DAO, i.e. the one holding the connection */
+	final Thread holder = Thread.currentThread();
+	/** {@link System#nanoTime()} when the connection was acquired */
+	final long acquiredAt;
 
 	DAO() {
-		// ensures that only one DAO at a time is active (instantiated and not closed yet) and uses the single connection
-		synchronized (CONN) {
-			boolean interrupted = false;
-			while (!connectionIsFree) {
-				try {
-					CONN.wait();
-				} catch (InterruptedException save) { // do not loose the interruption flag
-					interrupted = true;
-				}
-			}
-			connectionIsFree = false;
-			if (interrupted)
-				Thread.currentThread().interrupt(); // re-raise the flag
+		// blocks until a connection is free
+		long t0 = System.nanoTime();
+		connectionProvider = provider();
+		queueDepth.record(waiters.incrementAndGet());
+		try {
+			conn = connectionProvider.acquire();
+		} finally {
+			waiters.decrementAndGet();
 		}
+		acquiredAt = System.nanoTime();
+		connectionWait.record(acquiredAt - t0);
+		timers.wait.record(acquiredAt - t0);
+		SlowHolderWatchdog w = watchdog;
+		if (w != null)
+			w.acquired(this);
 		setAutoCommit(true);
 	}
 
@@ -77,18 +176,28 @@ public abstract class DAO implements AutoCloseable {
 		if (closed || this.autoCommit == autoCommit)
 			return;
 		try {
-			CONN.setAutoCommit(autoCommit);
+			conn.get().setAutoCommit(autoCommit);
 			this.autoCommit = autoCommit;
 		} catch (SQLException ex) {
 			throw error(new FailureException("DB failure"), concat("Failed to set auto-commit: " + autoCommit, ex));
 		}
 	}
 
+	private void finishStatement() {
+		if (currentTimer != null) {
+			currentTimer.record(System.nanoTime() - currentStart);
+			currentTimer = null;
+		}
+	}
+
 	void commitAndEnableAutoCommit() {
 		throwIfClosed();
+		finishStatement();
 		if (!autoCommit) {
 			try {
-				CONN.commit();
+				long t0 = System.nanoTime();
+				conn.get().commit();
+				commits.record(System.nanoTime() - t0);
 			} catch (SQLException ex) {
 				throw failure(ex, "Failed to commit");
 			} finally {
@@ -99,9 +208,12 @@ public abstract class DAO implements AutoCloseable {
 
 	void rollbackAndEnableAutoCommit() {
 		throwIfClosed();
+		finishStatement();
 		if (!autoCommit) {
 			try {
-				CONN.rollback();
+				long t0 = System.nanoTime();
+				conn.get().rollback();
+				rollbacks.record(System.nanoTime() - t0);
 			} catch (SQLException ex) {
 				warn(ex, "Failed to rollback");
 			} finally {
@@ -110,16 +222,36 @@ public abstract class DAO implements AutoCloseable {
 		}
 	}
 
-	PreparedStatement prepareStatement(String sql) {
+	PreparedStatement prepareStatement(String name, String sql) {
+		return prepareStatement(name, sql, Statement.NO_GENERATED_KEYS);
+	}
+
+	/**
+	 * @param name the constant name of the statement, such as {@code "attendance.checkIn"}, which its timer is
+	 * keyed by; a SQL built at run time, e.g. for the partitions in range, goes under the name of its call site
+	 * @param autoGeneratedKeys MUST be the same each time the {@code sql} is prepared
+	 */
+	PreparedStatement prepareStatement(String name, String sql, int autoGeneratedKeys) {
 		throwIfClosed();
+		if (!filledAndTrimmed(name))
+			throw new IllegalArgumentException("name = " + nullOrQuoted(name));
 		String s;
 		if ((s = sql) == null || (sql = sql.trim()).length() <= 0)
 			throw new IllegalArgumentException("sql = " + nullOrQuoted(s));
+		if (cancelled)
+			throw new CancellationException("DAO cancelled");
 		lastSql = sql;
+		finishStatement();
 		try {
-			PreparedStatement stmt = stmts.get(sql);
-			if (stmt == null)
-				stmts.put(sql, stmt = CONN.prepareStatement(sql));
+			// the statements outlive this DAO; they are cached along with the connection
+			PreparedStatement stmt = conn.getStatements().prepare(sql, autoGeneratedKeys);
+			// H2 keeps the timeout per connection, so it is reset for each statement; a no-op unless changed
+			stmt.setQueryTimeout(queryTimeoutSecs);
+			synchronized (this) {
+				current = stmt;
+			}
+			currentTimer = statementTimer(name, sql);
+			currentStart = System.nanoTime();
 			return stmt;
 		} catch (SQLException ex) {
 			throw failure(ex, "Failed to prepare statement");
@@ -139,21 +271,66 @@ public abstract class DAO implements AutoCloseable {
 		if (closed)
 			return;
 		rollbackAndEnableAutoCommit();
-		stmts.values().forEach(DAO::close);
-		stmts.clear();
-		closed = true;
-		synchronized (CONN) {
-			connectionIsFree = true;
-			CONN.notify();
+		synchronized (this) {
+			closed = true;
+			current = null;
+		}
+		// a cancel that has come too late would fail the next execution of the statement
+		if (cancelled)
+			conn.getStatements().clear();
+		timers.hold.record(System.nanoTime() - acquiredAt);
+		SlowHolderWatchdog w = watchdog;
+		if (w != null)
+			w.released(this);
+		connectionProvider.release(conn);
+	}
+
+	/**
+	 * Cancels the statement executing, if any, and makes this DAO refuse to run statements afterwards.
+	 * The method being executed then throws {@link CancellationException}.
+	 * Unlike the other methods, this one may be invoked from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+		synchronized (this) {
+			// the connection may serve another DAO once this one is closed
+			if (closed || current == null)
+				return;
+			try {
+				current.cancel();
+			} catch (SQLException ex) {
+				warn(ex, "Failed to cancel the statement");
+			}
 		}
 	}
 
+	public boolean isCancelled() { return cancelled; }
+
 	/**
-	 * Closes the single connection.
+	 * Limits the time each statement run afterwards may take. A statement running longer is cancelled,
+	 * and the method running it fails.
+	 * @param seconds {@code 0} means no limit
+	 */
+	public void setQueryTimeout(int seconds) {
+		if (seconds < 0)
+			throw new IllegalArgumentException("seconds must be greater or equal to 0");
+		queryTimeoutSecs = seconds;
+	}
+
+	/**
+	 * Closes the connections.
 	 * <b>No descending DAOs are aligible for use after this method is invoked.
 	 * Trying to use them will fail.</b>
 	 */
-	public static void terminate() { close(CONN); }
+	public static void terminate() {
+		watchSlowHolders(0);
+		ConnectionProvider p;
+		synchronized (DAO.class) {
+			p = provider;
+		}
+		if (p != null)
+			p.terminate();
+	}
 
 	///////////////////////////////////////////////////////////////////
 	// Logging
@@ -163,9 +340,13 @@ public abstract class DAO implements AutoCloseable {
 
 	boolean infoEnabled() { return log.infoEnabled(); }
 	void info(String msg) { log.info(msg); }
+	void info(String fmt, Object arg) { log.info(fmt, arg); }
+	void info(String fmt, Object arg1, Object arg2) { log.info(fmt, arg1, arg2); }
 	void info(String fmt, Object... args) { log.info(fmt, args); }
 
 	void warn(String msg) { log.warn(msg); }
+	void warn(String fmt, Object arg) { log.warn(fmt, arg); }
+	void warn(String fmt, Object arg1, Object arg2) { log.warn(fmt, arg1, arg2); }
 	void warn(String fmt, Object... args) { log.warn(fmt, args); }
 	void warn(Throwable err, String msg) { log.warn(err, msg); }
 	void warn(Throwable err, String fmt, Object... args) { log.warn(err, fmt, args); }
@@ -175,9 +356,16 @@ public abstract class DAO implements AutoCloseable {
 	<E extends Throwable> E error(E err, String msg) { return log.error(err, msg); }
 	<E extends Throwable> E error(E err, String fmt, Object... args) { return log.error(err, fmt, args); }
 
-	FailureException failure(SQLException cause, String fmt, Object... args) {
+	/** @return {@link CancellationException} if the failure is caused by {@link #cancel} */
+	RuntimeException failure(SQLException cause, String fmt, Object... args) {
+		failures.increment();
 		rollbackAndEnableAutoCommit();
-		return error(new FailureException("DB Failure"),
+		if (cancelled) {
+			info("Cancelled: {}", lastSql);
+			return new CancellationException("DAO cancelled");
+		}
+		boolean timedOut = cause.getErrorCode() == ErrorCode.STATEMENT_WAS_CANCELED;
+		return error(new FailureException(timedOut ? "DB timeout" : "DB Failure"),
 				concat((fmt == null ? "" : fmt + '\n')
 						+ "SQL error code: " + cause.getErrorCode()
 						+ "\nLast SQL: " + lastSql, cause), args);
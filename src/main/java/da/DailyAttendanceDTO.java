@@ -0,0 +1,43 @@
+package da;
+
+/**
+ * The attendance of an employee during a day rolled up from the attendance checked out.
+ * @author danis.tazeev@gmail.com
+ */
+public final class DailyAttendanceDTO {
+	private final long employeeId;
+	private final long day;
+	private final long firstIn;
+	private final long lastOut;
+	private final long workedMillis;
+	private final int shiftCount;
+
+	DailyAttendanceDTO(long employeeId, long day, long firstIn, long lastOut, long workedMillis, int shiftCount) {
+		if (firstIn <= 0)
+			throw new IllegalArgumentException("firstIn must be greater than 0");
+		if (lastOut < firstIn)
+			throw new IllegalArgumentException("lastOut must be greater or equal to firstIn");
+		if (workedMillis < 0)
+			throw new IllegalArgumentException("workedMillis must be greater or equal to 0");
+		if (shiftCount <= 0)
+			throw new IllegalArgumentException("shiftCount must be greater than 0");
+		this.employeeId = employeeId;
+		this.day = day;
+		this.firstIn = firstIn;
+		this.lastOut = lastOut;
+		this.workedMillis = workedMillis;
+		this.shiftCount = shiftCount;
+	}
+
+	public long getEmployeeId() { return employeeId; }
+	/** @return the timestamp of the local midnight the day starts at */
+	public long getDay() { return day; }
+	/** @return the earliest check in of the shifts overlapping the day; it can be on the day before */
+	public long getFirstIn() { return firstIn; }
+	/** @return the latest check out of the shifts overlapping the day; it can be on the day after */
+	public long getLastOut() { return lastOut; }
+	/** @return the time worked within the day */
+	public long getWorkedMillis() { return workedMillis; }
+	/** @return the number of shifts overlapping the day */
+	public int getShiftCount() { return shiftCount; }
+}
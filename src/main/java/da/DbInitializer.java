@@ -12,6 +12,7 @@ import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -58,25 +59,72 @@ public final class DbInitializer implements AutoCloseable {
 		}
 	}
 
+	/** @return the number of the last migration applied; {@code 0} if none has been applied yet */
+	private int schemaVersion() {
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("create table if not exists schema_version(version int not null primary key)");
+			try (ResultSet rs = stmt.executeQuery("select coalesce(max(version), 0) from schema_version")) {
+				rs.next();
+				return rs.getInt(1);
+			}
+		} catch (SQLException ex) {
+			throw failure(ex, "schemaVersion = fail");
+		}
+	}
+
+	/** Runs the given SQL, which is meant to be loaded from migrate-{version}.sql, and records the version */
+	private void migrate(int version, String sql) {
+		log.info("migrate({})", version);
+		try {
+			conn.setAutoCommit(false);
+			try (Statement stmt = conn.createStatement()) {
+				stmt.execute(sql);
+				stmt.executeUpdate("insert into schema_version(version) values(" + version + ')');
+			}
+			conn.commit();
+			log.info("migrate = success");
+		} catch (SQLException ex) {
+			try {
+				conn.rollback();
+			} catch (SQLException ignore) {}
+			throw failure(ex, "migrate({}) = fail", version);
+		}
+	}
+
 	@Override
 	public void close() {
 		DAO.close(conn);
 	}
 
-	/** @throws Throwable in a case of a permanent (unrecoverable) failure */
+	/** @return {@code null} if there is no such resource */
+	private static String loadScript(String path) {
+		StringBuilder sb = new StringBuilder(8192); // 16 KiB
+		try (InputStream is = DbInitializer.class.getResourceAsStream(path)) {
+			if (is == null)
+				return null;
+			BufferedReader r = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
+			r.lines().forEachOrdered(line -> sb.append(line).append('\n'));
+		} catch (IOException neverHappens) {}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the schema if it does not exist and then applies the migrations (migrate-1.sql, migrate-2.sql, ...)
+	 * that have not been applied yet.
+	 * @throws Throwable in a case of a permanent (unrecoverable) failure
+	 */
 	public static void initialize() {
 		try (DbInitializer dao = new DbInitializer()) {
 			if (!dao.isInitialized()) {
 				final String path = "create.sql";
-				StringBuilder sb = new StringBuilder(8192); // 16 KiB
-				try (InputStream is = DbInitializer.class.getResourceAsStream(path)) {
-					if (is == null)
-						throw log.error(new EnvironmentError("Broken package"), "Failed to load resource: '{}'", path);
-					BufferedReader r = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-					r.lines().forEachOrdered(sb::append);
-				} catch (IOException neverHappens) {}
-				dao.initialize(sb.toString());
+				String sql = loadScript(path);
+				if (sql == null)
+					throw log.error(new EnvironmentError("Broken package"), "Failed to load resource: '{}'", path);
+				dao.initialize(sql);
 			}
+			String sql;
+			for (int version = dao.schemaVersion() + 1; (sql = loadScript("migrate-" + version + ".sql")) != null; version++)
+				dao.migrate(version, sql);
 		}
 	}
 }
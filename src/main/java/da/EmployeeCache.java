@@ -0,0 +1,144 @@
+package da;
+
+import shared.Logging;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps the employees ordered by name in memory. A background thread periodically reads the employee change log
+ * and applies only the changed employees to the ordered array, so no refresh scans the whole employee table.
+ * The changes applied are deleted from the log by the next refresh.
+ * @author danis.tazeev@gmail.com
+ */
+public final class EmployeeCache implements AutoCloseable {
+	private static final Logging log = new Logging(EmployeeCache.class);
+	/** The same order as the one of {@code order by name} */
+	private static final Comparator<EmployeeDTO> BY_NAME = (a, b) -> a.getName().compareTo(b.getName());
+
+	/** Receives the employees ordered by name each time they change */
+	@FunctionalInterface
+	public interface Listener {
+		/** @param employees MUST NOT be modified */
+		void employeesChanged(EmployeeDTO[] employees);
+	}
+
+	private final long periodMillis;
+	private final Listener listener;
+	private final Thread thread;
+	private final LongObjectMap<EmployeeDTO> employeesById;
+	private volatile EmployeeDTO[] employees;
+	/** The sequence number of the last change applied */
+	private long seq;
+	private boolean closed;
+
+	/**
+	 * Loads all the employees and notifies the {@code listener} before returning.
+	 * @param periodMillis how often to look for the changes
+	 */
+	public EmployeeCache(long periodMillis, Listener listener) {
+		if (periodMillis <= 0)
+			throw new IllegalArgumentException("periodMillis must be greater than 0");
+		if (listener == null)
+			throw new IllegalArgumentException("listener = null");
+		this.periodMillis = periodMillis;
+		this.listener = listener;
+		try (EmployeeDAO dao = new EmployeeDAO()) {
+			// a change made in between is applied again by the first refresh
+			seq = dao.selectChangeSeq();
+			employees = dao.selectAllEmployeesOrderedByName();
+		}
+		employeesById = new LongObjectMap<>(employees.length);
+		for (EmployeeDTO e : employees)
+			employeesById.put(e.getId(), e);
+		listener.employeesChanged(employees);
+		thread = new Thread(this::run, "Employee Cache Refresher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** @return the employees ordered by name; MUST NOT be modified. Never {@code null} */
+	public EmployeeDTO[] getEmployees() { return employees; }
+
+	/**
+	 * Applies the employee changes made since the previous refresh and notifies the listener if there are any.
+	 * The employees not changed keep their {@code EmployeeDTO} instances.
+	 * @return {@code true} if the employees have changed
+	 */
+	public synchronized boolean refresh() {
+		long[] changedIds;
+		EmployeeDTO[] changed;
+		long until;
+		try (EmployeeDAO dao = new EmployeeDAO()) {
+			// applied by the previous refresh, so the log stays as short as the changes of a period
+			dao.deleteChangesUpTo(seq);
+			// the log emptied by the pruning tells 0
+			until = dao.selectChangeSeq();
+			if (until <= seq)
+				return false;
+			changedIds = dao.selectEmployeeIdsChangedBetween(seq, until);
+			changed = dao.selectEmployeesChangedBetween(seq, until);
+		}
+		EmployeeDTO[] a = Arrays.copyOf(employees, employees.length + changed.length);
+		int n = employees.length;
+		// remove all the changed first, since renames may swap names
+		for (long id : changedIds) {
+			EmployeeDTO old = employeesById.remove(id);
+			if (old != null) {
+				int i = Arrays.binarySearch(a, 0, n, old, BY_NAME);
+				System.arraycopy(a, i + 1, a, i, --n - i);
+			}
+		}
+		for (EmployeeDTO e : changed) {
+			int i = -Arrays.binarySearch(a, 0, n, e, BY_NAME) - 1;
+			System.arraycopy(a, i, a, i + 1, n++ - i);
+			a[i] = e;
+			employeesById.put(e.getId(), e);
+		}
+		employees = Arrays.copyOf(a, n);
+		seq = until;
+		log.info("refresh = success: {} changed", changedIds.length);
+		listener.employeesChanged(employees);
+		return true;
+	}
+
+	/** @return {@code false} if closed */
+	private synchronized boolean awaitPeriod() {
+		long deadline = System.currentTimeMillis() + periodMillis;
+		long remaining;
+		while (!closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException ex) {
+				return false;
+			}
+		}
+		return !closed;
+	}
+
+	private void run() {
+		while (awaitPeriod()) {
+			try {
+				refresh();
+			} catch (Throwable err) {
+				// DAO has logged the failure; retry next period
+				log.warn(err, "refresh = fail; retrying in {} ms", periodMillis);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notify();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+	}
+}
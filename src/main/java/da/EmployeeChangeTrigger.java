@@ -0,0 +1,39 @@
+package da;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Records each change of the employee table into the employee change log within the changing transaction,
+ * whoever changes the table. {@link EmployeeCache} reads the log to refresh itself incrementally.
+ * @author danis.tazeev@gmail.com
+ */
+public final class EmployeeChangeTrigger implements Trigger {
+	@Override
+	public void init(Connection conn, String schemaName, String triggerName, String tableName,
+			boolean before, int type) {}
+
+	@Override
+	public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement("insert into employee_change(employee_id) values(?)")) {
+			if (oldRow != null) {
+				stmt.setLong(1, ((Number)oldRow[0]).longValue());
+				stmt.executeUpdate();
+			}
+			// a changed id is logged as both the removal of the old one and the addition of the new one
+			if (newRow != null && (oldRow == null || !oldRow[0].equals(newRow[0]))) {
+				stmt.setLong(1, ((Number)newRow[0]).longValue());
+				stmt.executeUpdate();
+			}
+		}
+	}
+
+	@Override
+	public void close() {}
+
+	@Override
+	public void remove() {}
+}
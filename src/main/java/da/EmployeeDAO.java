@@ -4,6 +4,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /** @author danis.tazeev@gmail.com */
@@ -12,7 +13,7 @@ public final class EmployeeDAO extends DAO {
 	public EmployeeDTO[] selectAllEmployeesOrderedByName() {
 		ResultSet rs = null;
 		try {
-			PreparedStatement stmt = prepareStatement("select id, name from employee order by name");
+			PreparedStatement stmt = prepareStatement("employee.selectAllEmployeesOrderedByName", "select id, name from employee order by name");
 			rs = stmt.executeQuery();
 
 			List<EmployeeDTO> result = new ArrayList<>(100);
@@ -25,4 +26,88 @@ public final class EmployeeDAO extends DAO {
 			close(rs);
 		}
 	}
+
+	/**
+	 * Take the sequence number before selecting the employees, and pass it to {@link #selectEmployeeIdsChangedBetween}
+	 * later to get what has changed since then.
+	 * @return the sequence number of the last employee change; {@code 0} if the change log is empty
+	 */
+	long selectChangeSeq() {
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("employee.selectChangeSeq", "select coalesce(max(seq), 0) from employee_change");
+			rs = stmt.executeQuery();
+			rs.next();
+			return rs.getLong(1);
+		} catch (SQLException ex) {
+			throw failure(ex, "selectChangeSeq = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
+	/**
+	 * Prunes the change log; a change applied needs no keeping since the sequence numbers never go back.
+	 * @return the number of changes deleted
+	 */
+	int deleteChangesUpTo(long seq) {
+		try {
+			PreparedStatement stmt = prepareStatement("employee.deleteChangesUpTo", "delete from employee_change where seq <= ?");
+			stmt.setLong(1, seq);
+			return stmt.executeUpdate();
+		} catch (SQLException ex) {
+			throw failure(ex, "deleteChangesUpTo = fail");
+		}
+	}
+
+	/**
+	 * @return the distinct ids of the employees inserted, updated or deleted after the change {@code since}
+	 * up to the change {@code until} inclusive. Never {@code null}
+	 */
+	long[] selectEmployeeIdsChangedBetween(long since, long until) {
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("employee.selectEmployeeIdsChangedBetween",
+					"select distinct employee_id from employee_change where seq > ? and seq <= ?");
+			stmt.setLong(1, since);
+			stmt.setLong(2, until);
+			rs = stmt.executeQuery();
+			long[] result = new long[16];
+			int n = 0;
+			while (rs.next()) {
+				if (n == result.length)
+					result = Arrays.copyOf(result, n + (n >> 1));
+				result[n++] = rs.getLong(1);
+			}
+			return Arrays.copyOf(result, n);
+		} catch (SQLException ex) {
+			throw failure(ex, "selectEmployeeIdsChangedBetween = fail");
+		} finally {
+			close(rs);
+		}
+	}
+
+	/**
+	 * @return the current state of the employees changed after the change {@code since} up to the change
+	 * {@code until} inclusive; the deleted employees are missing. Never {@code null}
+	 */
+	EmployeeDTO[] selectEmployeesChangedBetween(long since, long until) {
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = prepareStatement("employee.selectEmployeesChangedBetween",
+					"select id, name from employee"
+					+ " where id in (select employee_id from employee_change where seq > ? and seq <= ?)");
+			stmt.setLong(1, since);
+			stmt.setLong(2, until);
+			rs = stmt.executeQuery();
+			List<EmployeeDTO> result = new ArrayList<>();
+			while (rs.next())
+				result.add(new EmployeeDTO(rs.getLong(1), rs.getString(2)));
+			return result.toArray(new EmployeeDTO[result.size()]);
+		} catch (SQLException ex) {
+			throw failure(ex, "selectEmployeesChangedBetween = fail");
+		} finally {
+			close(rs);
+		}
+	}
 }
@@ -0,0 +1,59 @@
+package da;
+
+/**
+ * The open-addressing table with linear probing of primitive {@code long} keys shared by {@link LongObjectMap}
+ * and the stripes of {@link OpenShiftRegistry}. Subclasses decide which slots are free and keep the payload,
+ * if any, in parallel arrays. The capacity MUST be a power of 2. Not thread-safe.
+ * @author danis.tazeev@gmail.com
+ */
+abstract class LongHashTable {
+	long[] keys;
+	int size;
+
+	LongHashTable(int capacity) {
+		assert Integer.bitCount(capacity) == 1;
+		keys = new long[capacity];
+	}
+
+	/** Spreads the bits of sequential ids over the whole {@code int} */
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ h >>> 32);
+	}
+
+	abstract boolean isFree(int slot);
+
+	/** Moves the payload, if any, from the slot {@code from} to the free slot {@code to} */
+	abstract void moveSlot(int from, int to);
+
+	abstract void freeSlot(int slot);
+
+	/** @return the slot of the {@code key} or {@code ~slot} of the free slot where the {@code key} goes */
+	final int find(long key, int hash) {
+		int mask = keys.length - 1;
+		for (int i = hash & mask; ; i = i + 1 & mask) {
+			if (isFree(i))
+				return ~i;
+			if (keys[i] == key)
+				return i;
+		}
+	}
+
+	/** Frees the occupied {@code slot} */
+	final void delete(int slot) {
+		int mask = keys.length - 1;
+		int i = slot;
+		// backward shift deletion keeps the probe sequences unbroken without tombstones
+		for (int j = i + 1 & mask; !isFree(j); j = j + 1 & mask) {
+			int home = hash(keys[j]) & mask;
+			// move the key at j into the hole at i unless its home lies cyclically in (i, j]
+			if (i <= j ? home <= i || home > j : home <= i && home > j) {
+				keys[i] = keys[j];
+				moveSlot(j, i);
+				i = j;
+			}
+		}
+		freeSlot(i);
+		size--;
+	}
+}
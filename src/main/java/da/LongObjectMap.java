@@ -0,0 +1,99 @@
+package da;
+
+import java.util.Arrays;
+
+/**
+ * A map of primitive {@code long} keys to objects. Unlike {@code Map<Long, V>} neither a lookup nor
+ * an insertion boxes the key. Keys live in an open-addressing table with linear probing.
+ * Not thread-safe.
+ * @author danis.tazeev@gmail.com
+ */
+public final class LongObjectMap<V> extends LongHashTable {
+	private Object[] values; // a null value marks a free slot
+
+	public LongObjectMap() { this(16); }
+
+	/** @param expectedSize the number of mappings the map holds without growing */
+	public LongObjectMap(int expectedSize) {
+		super(capacityFor(expectedSize));
+		values = new Object[keys.length];
+	}
+
+	private static int capacityFor(int expectedSize) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("expectedSize must be greater or equal to 0");
+		return Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+	}
+
+	public int size() { return size; }
+	public boolean isEmpty() { return size == 0; }
+
+	/** @return {@code null} if there is no mapping for the {@code key} */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int i = find(key, hash(key));
+		return i < 0 ? null : (V)values[i];
+	}
+
+	public boolean containsKey(long key) { return get(key) != null; }
+
+	/**
+	 * @param value MUST NOT be {@code null}
+	 * @return the previous value or {@code null} if there was no mapping for the {@code key}
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("value = null");
+		int i = find(key, hash(key));
+		if (i >= 0) {
+			Object v = values[i];
+			values[i] = value;
+			return (V)v;
+		}
+		keys[~i] = key;
+		values[~i] = value;
+		if (++size > keys.length >> 1)
+			rehash();
+		return null;
+	}
+
+	/** @return the removed value or {@code null} if there was no mapping for the {@code key} */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = find(key, hash(key));
+		if (i < 0)
+			return null;
+		Object removed = values[i];
+		delete(i);
+		return (V)removed;
+	}
+
+	@Override
+	boolean isFree(int slot) { return values[slot] == null; }
+
+	@Override
+	void moveSlot(int from, int to) { values[to] = values[from]; }
+
+	@Override
+	void freeSlot(int slot) { values[slot] = null; }
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[oldKeys.length << 1];
+		values = new Object[oldValues.length << 1];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = ~find(oldKeys[j], hash(oldKeys[j]));
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+}
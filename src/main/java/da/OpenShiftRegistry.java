@@ -0,0 +1,145 @@
+package da;
+
+import java.util.Arrays;
+
+/**
+ * A concurrent set of {@code employeeId}s having an open attendance, i.e. checked in and not checked out yet.
+ * The ids are kept as primitive {@code long}s in lock-striped open-addressing hash tables,
+ * so that both lookups and updates are O(1) and do not allocate.
+ * @author danis.tazeev@gmail.com
+ */
+final class OpenShiftRegistry {
+	private static final int STRIPES = 16; // MUST be a power of 2
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	OpenShiftRegistry() {
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	private Stripe stripeOf(int hash) { return stripes[hash >>> 28 & STRIPES - 1]; }
+
+	boolean contains(long employeeId) {
+		int h = LongHashTable.hash(employeeId);
+		return stripeOf(h).contains(employeeId, h);
+	}
+
+	/** @return {@code false} if the {@code employeeId} has already been in the set */
+	boolean add(long employeeId) {
+		int h = LongHashTable.hash(employeeId);
+		return stripeOf(h).add(employeeId, h);
+	}
+
+	/** @return {@code false} if the {@code employeeId} has not been in the set */
+	boolean remove(long employeeId) {
+		int h = LongHashTable.hash(employeeId);
+		return stripeOf(h).remove(employeeId, h);
+	}
+
+	void clear() {
+		for (Stripe s : stripes)
+			s.clear();
+	}
+
+	int size() {
+		int n = 0;
+		for (Stripe s : stripes)
+			n += s.size();
+		return n;
+	}
+
+	/** @return A snapshot of the ids in no particular order */
+	long[] toArray() {
+		long[] result = new long[0];
+		int n = 0;
+		for (Stripe s : stripes) {
+			synchronized (s) {
+				if (n + s.size > result.length)
+					result = Arrays.copyOf(result, n + s.size + (n + s.size >> 1));
+				n = s.copyTo(result, n);
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/** Open-addressing hash set. {@code 0} marks a free slot, so the key 0 is kept aside */
+	private static final class Stripe extends LongHashTable {
+		private boolean hasZero;
+
+		Stripe() { super(16); }
+
+		synchronized boolean contains(long key, int hash) {
+			return key == 0 ? hasZero : find(key, hash) >= 0;
+		}
+
+		synchronized boolean add(long key, int hash) {
+			if (key == 0) {
+				if (hasZero)
+					return false;
+				hasZero = true;
+				size++;
+				return true;
+			}
+			int i = find(key, hash);
+			if (i >= 0)
+				return false;
+			keys[~i] = key;
+			if (++size > keys.length >> 1)
+				rehash();
+			return true;
+		}
+
+		private void rehash() {
+			long[] old = keys;
+			keys = new long[old.length << 1];
+			for (long k : old) {
+				if (k != 0)
+					keys[~find(k, hash(k))] = k;
+			}
+		}
+
+		synchronized boolean remove(long key, int hash) {
+			if (key == 0) {
+				if (!hasZero)
+					return false;
+				hasZero = false;
+				size--;
+				return true;
+			}
+			int i = find(key, hash);
+			if (i < 0)
+				return false;
+			delete(i);
+			return true;
+		}
+
+		@Override
+		boolean isFree(int slot) { return keys[slot] == 0; }
+
+		@Override
+		void moveSlot(int from, int to) {} // the keys are the whole payload
+
+		@Override
+		void freeSlot(int slot) { keys[slot] = 0; }
+
+		synchronized void clear() {
+			Arrays.fill(keys, 0);
+			hasZero = false;
+			size = 0;
+		}
+
+		synchronized int size() { return size; }
+
+		/** MUST be invoked while holding the lock of this stripe */
+		private int copyTo(long[] dst, int n) {
+			if (hasZero)
+				dst[n++] = 0;
+			for (long k : keys) {
+				if (k != 0)
+					dst[n++] = k;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package da;
+
+import java.sql.Connection;
+
+/**
+ * A physical connection together with its {@link StatementCache} and the bookkeeping of a {@link ConnectionProvider}.
+ * Instances are handed out to a single {@link DAO} at a time and are not thread-safe.
+ * @author danis.tazeev@gmail.com
+ */
+final class PooledConnection {
+	private final Connection conn;
+	private final StatementCache stmts;
+	private long releasedAt;
+
+	PooledConnection(Connection conn) {
+		assert conn != null;
+		this.conn = conn;
+		stmts = new StatementCache(conn, StatementCache.DEFAULT_MAX_SIZE);
+		releasedAt = System.currentTimeMillis();
+	}
+
+	Connection get() { return conn; }
+	StatementCache getStatements() { return stmts; }
+
+	/** @return the timestamp the connection has been returned to its provider the last time */
+	long getReleasedAt() { return releasedAt; }
+	void markReleased() { releasedAt = System.currentTimeMillis(); }
+
+	void close() {
+		stmts.clear();
+		DAO.close(conn);
+	}
+}
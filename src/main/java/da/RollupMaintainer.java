@@ -0,0 +1,104 @@
+package da;
+
+import shared.Logging;
+
+/**
+ * Keeps the daily attendance read by {@link AttendanceDAO#selectEmployeeDailyAttendanceBetween} up to date.
+ * A background thread rolls up the attendance as soon as it is checked out, and also periodically
+ * in case a notification is missed or a roll up fails. Then it prunes the attendance_log records rolled up
+ * unless a report still needs them to fetch its changes.
+ * @author danis.tazeev@gmail.com
+ */
+public final class RollupMaintainer implements AutoCloseable {
+	private static final Logging log = new Logging(RollupMaintainer.class);
+	private static volatile RollupMaintainer active;
+
+	private final long periodMillis;
+	private final int maxCheckOutsPerTransaction;
+	private final Thread thread;
+	private boolean pending = true; // roll up whatever has been checked out before start
+	private boolean closed;
+
+	/**
+	 * @param periodMillis how often to roll up if no check out is reported
+	 * @param maxCheckOutsPerTransaction the max number of check outs rolled up, as well as of the log records
+	 * pruned, in a single transaction
+	 * @throws IllegalStateException if another maintainer is running
+	 */
+	public RollupMaintainer(long periodMillis, int maxCheckOutsPerTransaction) {
+		if (periodMillis <= 0)
+			throw new IllegalArgumentException("periodMillis must be greater than 0");
+		if (maxCheckOutsPerTransaction <= 0)
+			throw new IllegalArgumentException("maxCheckOutsPerTransaction must be greater than 0");
+		this.periodMillis = periodMillis;
+		this.maxCheckOutsPerTransaction = maxCheckOutsPerTransaction;
+		synchronized (RollupMaintainer.class) {
+			if (active != null)
+				throw new IllegalStateException("Another RollupMaintainer is running");
+			active = this;
+		}
+		thread = new Thread(this::run, "Rollup Maintainer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Invoked by {@link AttendanceDAO} each time a check out is committed */
+	static void checkedOut() {
+		RollupMaintainer m = active;
+		if (m != null)
+			m.wakeUp();
+	}
+
+	private synchronized void wakeUp() {
+		pending = true;
+		notify();
+	}
+
+	/** @return {@code false} if closed */
+	private synchronized boolean awaitCheckOuts() {
+		long deadline = System.currentTimeMillis() + periodMillis;
+		long remaining;
+		while (!pending && !closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException ex) {
+				return false;
+			}
+		}
+		pending = false;
+		return !closed;
+	}
+
+	private void run() {
+		while (awaitCheckOuts()) {
+			try (AttendanceDAO dao = new AttendanceDAO()) {
+				while (dao.rollUp(maxCheckOutsPerTransaction) == maxCheckOutsPerTransaction && !isClosed());
+				while (dao.pruneLog(maxCheckOutsPerTransaction) == maxCheckOutsPerTransaction && !isClosed());
+			} catch (Throwable err) {
+				// DAO has logged the failure; retry next period
+				log.warn(err, "rollUp = fail; retrying in {} ms", periodMillis);
+			}
+		}
+	}
+
+	private synchronized boolean isClosed() { return closed; }
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notify();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+		synchronized (RollupMaintainer.class) {
+			if (active == this)
+				active = null;
+		}
+	}
+}
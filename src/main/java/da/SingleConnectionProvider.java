@@ -0,0 +1,66 @@
+package da;
+
+import shared.EnvironmentError;
+import shared.FailureException;
+import shared.Logging;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Hands out the single and the only connection, so that only one DAO at a time is active
+ * (instantiated and not closed yet). The rest of DAOs wait in their constructors.
+ * @author danis.tazeev@gmail.com
+ */
+final class SingleConnectionProvider implements ConnectionProvider {
+	private final PooledConnection conn;
+	private boolean connectionIsFree = true;
+	private boolean terminated;
+
+	SingleConnectionProvider(String jdbcUrl) {
+		assert jdbcUrl != null;
+		try {
+			conn = new PooledConnection(DriverManager.getConnection(jdbcUrl));
+		} catch (SQLException ex) {
+			// NOTE: Since H2 runs in the process the exception is thrown:
+			// - if the DB cannot be created in the working directory
+			// - the DB is already in use
+			throw new Logging(SingleConnectionProvider.class).error(
+					new EnvironmentError("DB failure"),
+					Logging.concat("Failed to obtain a connection", ex));
+		}
+	}
+
+	@Override
+	public synchronized PooledConnection acquire() {
+		boolean interrupted = false;
+		while (!connectionIsFree && !terminated) {
+			try {
+				wait();
+			} catch (InterruptedException save) { // do not loose the interruption flag
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt(); // re-raise the flag
+		if (terminated)
+			throw new FailureException("DB terminated");
+		connectionIsFree = false;
+		return conn;
+	}
+
+	@Override
+	public synchronized void release(PooledConnection conn) {
+		assert conn == this.conn && !connectionIsFree;
+		conn.markReleased();
+		connectionIsFree = true;
+		notify();
+	}
+
+	@Override
+	public synchronized void terminate() {
+		terminated = true;
+		conn.close();
+		notifyAll();
+	}
+}
@@ -0,0 +1,89 @@
+package da;
+
+import shared.Counter;
+import shared.Logging;
+import shared.Metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports each DAO holding its connection for longer than the threshold, once, along with the stack of
+ * the holding thread. The stack is taken while the connection is still held, so it shows what keeps it busy.
+ * @author danis.tazeev@gmail.com
+ */
+final class SlowHolderWatchdog implements AutoCloseable {
+	private static final Logging log = new Logging(SlowHolderWatchdog.class);
+	private static final Counter slowHolders = Metrics.counter("dao.slowHolders");
+
+	private final long thresholdNanos;
+	private final long periodMillis;
+	/** The DAOs holding connections; a DAO is removed once reported */
+	private final Set<DAO> holders = ConcurrentHashMap.newKeySet();
+	private final Thread thread;
+	private boolean closed;
+
+	SlowHolderWatchdog(long thresholdMillis) {
+		assert thresholdMillis > 0;
+		thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		// a holder is reported within 1.5 thresholds at the latest
+		periodMillis = Math.max(thresholdMillis / 2, 1);
+		thread = new Thread(this::run, "Slow Holder Watchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void acquired(DAO dao) { holders.add(dao); }
+
+	void released(DAO dao) { holders.remove(dao); }
+
+	/** @return {@code false} if closed */
+	private synchronized boolean awaitPeriod() {
+		long deadline = System.currentTimeMillis() + periodMillis;
+		long remaining;
+		while (!closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException ex) {
+				return false;
+			}
+		}
+		return !closed;
+	}
+
+	private void run() {
+		while (awaitPeriod()) {
+			long now = System.nanoTime();
+			for (DAO dao : holders) {
+				if (now - dao.acquiredAt < thresholdNanos)
+					continue;
+				StackTraceElement[] stack = dao.holder.getStackTrace();
+				// the stack is of no use if the connection has been released meanwhile
+				if (!holders.remove(dao))
+					continue;
+				slowHolders.increment();
+				StringBuilder sb = new StringBuilder();
+				for (StackTraceElement e : stack)
+					sb.append("\n\tat ").append(e);
+				log.warn("{} has held a connection for {} ms on thread '{}':{}", dao.getClass().getSimpleName(),
+						TimeUnit.NANOSECONDS.toMillis(now - dao.acquiredAt), dao.holder.getName(), sb);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notify();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package da;
+
+import shared.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An LRU cache of statements prepared on a single physical connection. Since the cache lives as long
+ * as the connection does, a statement is prepared only once no matter how many DAOs use the connection.
+ * Not thread-safe; the owning connection is used by one DAO at a time.
+ * @author danis.tazeev@gmail.com
+ */
+final class StatementCache {
+	static final int DEFAULT_MAX_SIZE = 64;
+
+	private static final LongAdder totalHits = new LongAdder();
+	private static final LongAdder totalMisses = new LongAdder();
+
+	static {
+		Metrics.gauge("dao.statementCache.hits", StatementCache::getTotalHits);
+		Metrics.gauge("dao.statementCache.misses", StatementCache::getTotalMisses);
+	}
+
+	private final Connection conn;
+	private final Map<String, PreparedStatement> stmts;
+	private long hits;
+	private long misses;
+
+	StatementCache(Connection conn, final int maxSize) {
+		assert conn != null;
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("maxSize must be greater than 0");
+		this.conn = conn;
+		stmts = new LinkedHashMap<String, PreparedStatement>(16, .75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= maxSize)
+					return false;
+				DAO.close(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/** @param sql MUST be trimmed */
+	PreparedStatement prepare(String sql) throws SQLException { return prepare(sql, Statement.NO_GENERATED_KEYS); }
+
+	/**
+	 * @param sql MUST be trimmed
+	 * @param autoGeneratedKeys MUST be the same each time the {@code sql} is prepared, since it is not a part of the key
+	 */
+	PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+		PreparedStatement stmt = stmts.get(sql);
+		if (stmt != null) {
+			hits++;
+			totalHits.increment();
+			return stmt;
+		}
+		misses++;
+		totalMisses.increment();
+		stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+		stmts.put(sql, stmt);
+		return stmt;
+	}
+
+	long getHits() { return hits; }
+	long getMisses() { return misses; }
+	int size() { return stmts.size(); }
+
+	/** @return the number of hits across the caches of all the connections */
+	static long getTotalHits() { return totalHits.sum(); }
+	/** @return the number of misses across the caches of all the connections */
+	static long getTotalMisses() { return totalMisses.sum(); }
+
+	void clear() {
+		stmts.values().forEach(DAO::close);
+		stmts.clear();
+	}
+}
@@ -0,0 +1,18 @@
+package shared;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter updated by many threads; striped, so the updates do not contend.
+ * @author danis.tazeev@gmail.com
+ */
+public final class Counter implements CounterMXBean {
+	private final LongAdder count = new LongAdder();
+
+	public void increment() { count.increment(); }
+
+	public void add(long n) { count.add(n); }
+
+	@Override
+	public long getCount() { return count.sum(); }
+}
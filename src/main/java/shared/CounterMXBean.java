@@ -0,0 +1,9 @@
+package shared;
+
+/**
+ * The JMX view of a {@link Counter} registered with {@link Metrics}.
+ * @author danis.tazeev@gmail.com
+ */
+public interface CounterMXBean {
+	long getCount();
+}
@@ -0,0 +1,9 @@
+package shared;
+
+/**
+ * The JMX view of a gauge registered with {@link Metrics#gauge}.
+ * @author danis.tazeev@gmail.com
+ */
+public interface GaugeMXBean {
+	long getValue();
+}
@@ -0,0 +1,124 @@
+package shared;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative {@code long} values, e.g. latencies in nanos. The values are counted in
+ * log-linear buckets: each power of 2 is split into {@value #SUB_BUCKETS} buckets, so a percentile is within
+ * 1/{@value #SUB_BUCKETS} of the exact value whatever the magnitude. Recording does not allocate.
+ * @author danis.tazeev@gmail.com
+ */
+public final class Histogram implements HistogramMXBean {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** The values below {@link #SUB_BUCKETS} are counted exactly, then each power of 2 takes its own buckets */
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+	/** Striped, since every recording thread updates them */
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int)value;
+		int bits = 64 - Long.numberOfLeadingZeros(value);
+		// the bits following the leading one make the sub-bucket
+		int shift = bits - 1 - SUB_BUCKET_BITS;
+		return (bits - SUB_BUCKET_BITS) * SUB_BUCKETS + (int)(value >>> shift & SUB_BUCKETS - 1);
+	}
+
+	/** @return the greatest value counted in the {@code bucket} */
+	private static long highestOf(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int bits = bucket / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int shift = bits - 1 - SUB_BUCKET_BITS;
+		long lowest = 1L << bits - 1 | (long)(bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/** Negative values are counted as {@code 0} */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		raiseMax(value);
+	}
+
+	/** Unlike {@link AtomicLong#accumulateAndGet}, does not write unless the max grows */
+	private void raiseMax(long value) {
+		for (long m; value > (m = max.get()) && !max.compareAndSet(m, value); );
+	}
+
+	@Override
+	public long getCount() { return count.sum(); }
+
+	@Override
+	public long getSum() { return sum.sum(); }
+
+	@Override
+	public long getMax() { return max.get(); }
+
+	/** @return {@code 0} if nothing is recorded */
+	@Override
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double)sum.sum() / n;
+	}
+
+	@Override
+	public long getP50() { return getValueAtPercentile(50); }
+
+	@Override
+	public long getP99() { return getValueAtPercentile(99); }
+
+	@Override
+	public long getP999() { return getValueAtPercentile(99.9); }
+
+	/**
+	 * @param percentile in {@code [0, 100]}
+	 * @return the value not exceeded by the {@code percentile} of the recorded ones; {@code 0} if nothing is recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("percentile must be in [0, 100]");
+		long n = count.sum();
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestOf(i), getMax());
+		}
+		return getMax(); // recorded concurrently
+	}
+
+	/** Adds the values recorded by the {@code other} histogram to this one */
+	public void add(Histogram other) {
+		if (other == null)
+			throw new IllegalArgumentException("other = null");
+		for (int i = 0; i < counts.length(); i++) {
+			long c = other.counts.get(i);
+			if (c != 0)
+				counts.addAndGet(i, c);
+		}
+		count.add(other.count.sum());
+		sum.add(other.sum.sum());
+		raiseMax(other.max.get());
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+}
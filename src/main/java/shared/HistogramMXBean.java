@@ -0,0 +1,15 @@
+package shared;
+
+/**
+ * The JMX view of a {@link Histogram} registered with {@link Metrics}.
+ * @author danis.tazeev@gmail.com
+ */
+public interface HistogramMXBean {
+	long getCount();
+	long getSum();
+	long getMax();
+	double getMean();
+	long getP50();
+	long getP99();
+	long getP999();
+}
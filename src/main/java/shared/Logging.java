@@ -1,5 +1,7 @@
 package shared;
 
+import ch.qos.logback.classic.LoggerContext;
+import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,25 +41,47 @@ public final class Logging {
 		return sb.toString();
 	}
 
+	/**
+	 * Writes the log events still queued and stops logging. Invoke once on exit;
+	 * the events logged afterwards are lost.
+	 */
+	public static void shutdown() {
+		ILoggerFactory f = LoggerFactory.getILoggerFactory();
+		if (f instanceof LoggerContext)
+			((LoggerContext)f).stop();
+	}
+
+	// The fixed arity overloads spare the varargs array of the most frequent calls
+
 	public boolean infoEnabled() { return logger.isInfoEnabled(); }
 	public void info(String msg) { logger.info(msg); }
+	public void info(String fmt, Object arg) { logger.info(fmt, arg); }
+	public void info(String fmt, Object arg1, Object arg2) { logger.info(fmt, arg1, arg2); }
 	public void info(String fmt, Object... args) { logger.info(fmt, args); }
 
 	///////////////////////////////////////////////////////////////////
 	// Warnings are always enabled
 
 	public void warn(String msg) { logger.warn(msg); }
+	public void warn(String fmt, Object arg) { logger.warn(fmt, arg); }
+	public void warn(String fmt, Object arg1, Object arg2) { logger.warn(fmt, arg1, arg2); }
 	public void warn(String fmt, Object... args) { logger.warn(fmt, args); }
 	/**
 	 * Does not log the stack trace of the {@code err}. Only logs the
 	 * chain of error messages from the {@code err} and its causes.
 	 */
-	public void warn(Throwable err, String msg) { logger.warn(concat(msg, err)); }
+	public void warn(Throwable err, String msg) {
+		if (logger.isWarnEnabled())
+			logger.warn(concat(msg, err));
+	}
 	/**
 	 * Does not log the stack trace of the {@code err}. Only logs the
 	 * chain of error messages from the {@code err} and its causes.
 	 */
-	public void warn(Throwable err, String fmt, Object... args) { logger.warn(concat(fmt, err), args); }
+	public void warn(Throwable err, String fmt, Object... args) {
+		if (logger.isWarnEnabled())
+			logger.warn(concat(fmt, err), args);
+	}
 
 	///////////////////////////////////////////////////////////////////
 	// Errors are always enabled
@@ -68,9 +92,17 @@ public final class Logging {
 	public <E extends Throwable> E error(E err, String msg) { logger.error(msg, err); return err; }
 	/** @return {@code err} as is */
 	public <E extends Throwable> E error(E err, String fmt, Object... args) {
-		args = Arrays.copyOf(args, args.length + 1);
-		args[args.length - 1] = err;
-		logger.error(fmt, args);
+		if (!logger.isErrorEnabled())
+			return err;
+		// the last argument not consumed by the format is logged as the throwable
+		switch (args.length) {
+			case 0: logger.error(fmt, err); break;
+			case 1: logger.error(fmt, args[0], err); break;
+			default:
+				args = Arrays.copyOf(args, args.length + 1);
+				args[args.length - 1] = err;
+				logger.error(fmt, args);
+		}
 		return err;
 	}
 }
@@ -0,0 +1,117 @@
+package shared;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The registry of the metrics of the application. Each metric is registered once by name and exposed through
+ * the platform MBean server as {@code trial:type=<Type>,name=<name>}. Looking a metric up takes a map lookup,
+ * so hot paths keep the metrics they record to.
+ * @author danis.tazeev@gmail.com
+ */
+public final class Metrics {
+	private static final Logging log = new Logging(Metrics.class);
+	private static final String DOMAIN = "trial";
+	/** Ordered by name, so is the {@link #dump} */
+	private static final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+	private Metrics() {}
+
+	private static final class Gauge implements GaugeMXBean {
+		private final LongSupplier value;
+
+		private Gauge(LongSupplier value) {
+			this.value = value;
+		}
+
+		@Override
+		public long getValue() { return value.getAsLong(); }
+	}
+
+	private static <M> M register(String name, Class<M> type, M metric) {
+		if (name == null || name.isEmpty())
+			throw new IllegalArgumentException("name = " + Assert.nullOrQuoted(name));
+		Object registered = metrics.putIfAbsent(name, metric);
+		if (registered != null) {
+			if (!type.isInstance(registered))
+				throw new IllegalArgumentException(String.format("'%s' is registered as %s",
+						name, registered.getClass().getSimpleName()));
+			return type.cast(registered);
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metric, new ObjectName(
+					DOMAIN + ":type=" + type.getSimpleName().replace("MXBean", "") + ",name=" + ObjectName.quote(name)));
+		} catch (JMException ex) {
+			// the metric is still recorded and dumped
+			log.warn(ex, "Failed to register {} with JMX", name);
+		}
+		return metric;
+	}
+
+	/** @return the counter registered with the {@code name}, registering it if absent */
+	public static Counter counter(String name) {
+		Object m = metrics.get(name);
+		return m instanceof Counter ? (Counter)m : register(name, Counter.class, new Counter());
+	}
+
+	/** @return the timer registered with the {@code name}, registering it if absent */
+	public static Timer timer(String name) { return timer(name, ""); }
+
+	/**
+	 * @param description what is timed; ignored if the timer is already registered
+	 * @return the timer registered with the {@code name}, registering it if absent
+	 */
+	public static Timer timer(String name, String description) {
+		if (description == null)
+			throw new IllegalArgumentException("description = null");
+		Object m = metrics.get(name);
+		return m instanceof Timer ? (Timer)m : register(name, Timer.class, new Timer(description));
+	}
+
+	/** @return the histogram registered with the {@code name}, registering it if absent */
+	public static Histogram histogram(String name) {
+		Object m = metrics.get(name);
+		return m instanceof Histogram ? (Histogram)m : register(name, Histogram.class, new Histogram());
+	}
+
+	/**
+	 * Registers a value sampled each time it is read.
+	 * @param value MUST be thread-safe and cheap; ignored if the gauge is already registered
+	 */
+	public static void gauge(String name, LongSupplier value) {
+		if (value == null)
+			throw new IllegalArgumentException("value = null");
+		register(name, GaugeMXBean.class, new Gauge(value));
+	}
+
+	/** @return a line per metric ordered by name; the timers not run yet are skipped */
+	public static String dump() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Object> e : metrics.entrySet()) {
+			Object m = e.getValue();
+			if (m instanceof Timer) {
+				Timer t = (Timer)m;
+				if (t.getCount() == 0)
+					continue;
+				sb.append(String.format("%n%s count=%d total=%.1f mean=%.3f p50=%.3f p99=%.3f p999=%.3f max=%.3f ms",
+						e.getKey(), t.getCount(), t.getTotalMillis(), t.getMeanMillis(),
+						t.getP50Millis(), t.getP99Millis(), t.getP999Millis(), t.getMaxMillis()));
+				if (!t.getDescription().isEmpty())
+					sb.append(": ").append(t.getDescription());
+			} else if (m instanceof Histogram) {
+				Histogram h = (Histogram)m;
+				sb.append(String.format("%n%s count=%d mean=%.1f p50=%d p99=%d p999=%d max=%d",
+						e.getKey(), h.getCount(), h.getMean(), h.getP50(), h.getP99(), h.getP999(), h.getMax()));
+			} else if (m instanceof Counter)
+				sb.append(String.format("%n%s count=%d", e.getKey(), ((Counter)m).getCount()));
+			else
+				sb.append(String.format("%n%s value=%d", e.getKey(), ((Gauge)m).getValue()));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,59 @@
+package shared;
+
+/**
+ * Logs the {@link Metrics#dump() metrics} periodically and once more when closed.
+ * @author danis.tazeev@gmail.com
+ */
+public final class MetricsDumper implements AutoCloseable {
+	private static final Logging log = new Logging(MetricsDumper.class);
+
+	private final long periodMillis;
+	private final Thread thread;
+	private boolean closed;
+
+	/** @param periodMillis how often to dump the metrics; {@link Long#MAX_VALUE} means on close only */
+	public MetricsDumper(long periodMillis) {
+		if (periodMillis <= 0)
+			throw new IllegalArgumentException("periodMillis must be greater than 0");
+		this.periodMillis = periodMillis;
+		thread = new Thread(this::run, "Metrics Dumper");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** @return {@code false} if closed */
+	private synchronized boolean awaitPeriod() {
+		long now = System.currentTimeMillis();
+		long deadline = now + periodMillis < now ? Long.MAX_VALUE : now + periodMillis;
+		long remaining;
+		while (!closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException ex) {
+				return false;
+			}
+		}
+		return !closed;
+	}
+
+	private void run() {
+		while (awaitPeriod())
+			log.info("Metrics:{}", Metrics.dump());
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notify();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+		log.info("Metrics:{}", Metrics.dump());
+	}
+}
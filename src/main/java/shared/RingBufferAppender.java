@@ -0,0 +1,144 @@
+package shared;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A logback appender queueing the events into a bounded lock-free ring buffer, which a background thread
+ * drains into the attached appenders. Unlike logback's {@code AsyncAppender}, a logging thread neither takes
+ * a lock nor wakes the background thread up, which polls the buffer instead; so a log line costs the logging
+ * thread the formatting of the message and a CAS.
+ * <p>
+ * When the buffer is full the events of {@code INFO} and below are dropped and counted,
+ * while warnings and errors wait for room.
+ * @author danis.tazeev@gmail.com
+ */
+public final class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+		implements AppenderAttachable<ILoggingEvent> {
+	private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+	/** Created on start, since the appender is instantiated while logback is being configured */
+	private Counter dropped;
+	private int capacity = 8192;
+	private AtomicReferenceArray<ILoggingEvent> slots;
+	private int mask;
+	/** The sequence number of the next event to be queued */
+	private final AtomicLong head = new AtomicLong();
+	/** The sequence number of the next event to be drained */
+	private final AtomicLong tail = new AtomicLong();
+	private Thread drainer;
+	private volatile boolean stopping;
+
+	/** @param capacity rounded up to a power of 2 */
+	public void setCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() { return capacity; }
+
+	@Override
+	public void start() {
+		if (isStarted())
+			return;
+		int n = Integer.highestOneBit(capacity);
+		if (n < capacity)
+			n <<= 1;
+		slots = new AtomicReferenceArray<>(n);
+		mask = n - 1;
+		dropped = Metrics.counter("logging.dropped");
+		stopping = false;
+		drainer = new Thread(this::drain, "Log Drainer " + getName());
+		drainer.setDaemon(true);
+		super.start();
+		drainer.start();
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		if (stopping)
+			return;
+		event.prepareForDeferredProcessing();
+		long h;
+		do {
+			h = head.get();
+			if (h - tail.get() > mask) {
+				if (!event.getLevel().isGreaterOrEqual(Level.WARN)) {
+					dropped.increment();
+					return;
+				}
+				LockSupport.unpark(drainer);
+				Thread.yield();
+				continue;
+			}
+		} while (!head.compareAndSet(h, h + 1));
+		// the slot is free: the drainer has moved the tail past it
+		slots.lazySet((int)h & mask, event);
+	}
+
+	private void drain() {
+		while (true) {
+			long t = tail.get();
+			ILoggingEvent event = slots.get((int)t & mask);
+			if (event == null) {
+				// either empty or the event claimed is not stored yet
+				if (stopping && t == head.get())
+					return;
+				LockSupport.parkNanos(this, POLL_NANOS);
+				continue;
+			}
+			slots.lazySet((int)t & mask, null);
+			tail.lazySet(t + 1);
+			appenders.appendLoopOnAppenders(event);
+		}
+	}
+
+	/** Writes the events queued so far before returning */
+	@Override
+	public void stop() {
+		if (!isStarted())
+			return;
+		stopping = true;
+		LockSupport.unpark(drainer);
+		try {
+			drainer.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt(); // re-raise the flag
+		}
+		super.stop();
+		appenders.detachAndStopAllAppenders();
+	}
+
+	@Override
+	public void addAppender(Appender<ILoggingEvent> newAppender) { appenders.addAppender(newAppender); }
+
+	@Override
+	public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() { return appenders.iteratorForAppenders(); }
+
+	@Override
+	public Appender<ILoggingEvent> getAppender(String name) { return appenders.getAppender(name); }
+
+	@Override
+	public boolean isAttached(Appender<ILoggingEvent> appender) { return appenders.isAttached(appender); }
+
+	@Override
+	public void detachAndStopAllAppenders() { appenders.detachAndStopAllAppenders(); }
+
+	@Override
+	public boolean detachAppender(Appender<ILoggingEvent> appender) { return appenders.detachAppender(appender); }
+
+	@Override
+	public boolean detachAppender(String name) { return appenders.detachAppender(name); }
+}
@@ -0,0 +1,51 @@
+package shared;
+
+/**
+ * Times an operation run by many threads. The durations are recorded in nanos into a {@link Histogram},
+ * so recording neither allocates nor blocks.
+ * <pre>
+ *     long t0 = System.nanoTime();
+ *     ...
+ *     timer.record(System.nanoTime() - t0);
+ * </pre>
+ * @author danis.tazeev@gmail.com
+ */
+public final class Timer implements TimerMXBean {
+	private final String description;
+	private final Histogram nanos = new Histogram();
+
+	Timer(String description) {
+		this.description = description;
+	}
+
+	public void record(long nanos) { this.nanos.record(nanos); }
+
+	/** @return the durations recorded in nanos */
+	public Histogram getNanos() { return nanos; }
+
+	private static double millis(long nanos) { return nanos / 1e6; }
+
+	@Override
+	public String getDescription() { return description; }
+
+	@Override
+	public long getCount() { return nanos.getCount(); }
+
+	@Override
+	public double getTotalMillis() { return millis(nanos.getSum()); }
+
+	@Override
+	public double getMeanMillis() { return nanos.getMean() / 1e6; }
+
+	@Override
+	public double getP50Millis() { return millis(nanos.getP50()); }
+
+	@Override
+	public double getP99Millis() { return millis(nanos.getP99()); }
+
+	@Override
+	public double getP999Millis() { return millis(nanos.getP999()); }
+
+	@Override
+	public double getMaxMillis() { return millis(nanos.getMax()); }
+}
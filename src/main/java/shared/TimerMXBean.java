@@ -0,0 +1,17 @@
+package shared;
+
+/**
+ * The JMX view of a {@link Timer} registered with {@link Metrics}. The durations are in millis.
+ * @author danis.tazeev@gmail.com
+ */
+public interface TimerMXBean {
+	/** @return what is timed, e.g. the SQL of a statement */
+	String getDescription();
+	long getCount();
+	double getTotalMillis();
+	double getMeanMillis();
+	double getP50Millis();
+	double getP99Millis();
+	double getP999Millis();
+	double getMaxMillis();
+}
@@ -0,0 +1,95 @@
+package ui;
+
+import shared.Logging;
+import shared.Metrics;
+import shared.Timer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link BackgroundTask background tasks} of the ui package instead of the JDK's shared
+ * SwingWorker pool, which is capped at 10 threads. On JDK 21+ each task may get a virtual thread
+ * of its own; otherwise the tasks are run by a bounded pool of platform threads.
+ * @author danis.tazeev@gmail.com
+ */
+final class BackgroundExecutor {
+	private static final Logging log = new Logging(BackgroundExecutor.class);
+	static final int DEFAULT_MAX_THREADS = 10;
+
+	private static Executor executor;
+	/** The tasks submitted but not started yet */
+	private static final AtomicInteger queueDepth = new AtomicInteger();
+	private static final Timer queueWait = Metrics.timer("background.queueWait", "Waiting for a thread");
+
+	static {
+		Metrics.gauge("background.queueDepth", queueDepth::get);
+	}
+
+	private BackgroundExecutor() {}
+
+	/**
+	 * @param maxThreads the max number of platform threads running the tasks; {@code 0} means a virtual thread
+	 * per task if the JDK supports them, or {@link #DEFAULT_MAX_THREADS} platform threads otherwise
+	 * @throws IllegalStateException if a task has already been executed
+	 */
+	static synchronized void configure(int maxThreads) {
+		if (maxThreads < 0)
+			throw new IllegalArgumentException("maxThreads must be greater or equal to 0");
+		if (executor != null)
+			throw new IllegalStateException("The executor is already in use");
+		if (maxThreads == 0) {
+			executor = newVirtualThreadPerTaskExecutor();
+			if (executor != null) {
+				log.info("Background tasks run in virtual threads");
+				return;
+			}
+			maxThreads = DEFAULT_MAX_THREADS;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads,
+				1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> {
+					Thread t = new Thread(r, "Background Worker " + threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		executor = pool;
+		log.info("Background tasks run in {} platform threads", maxThreads);
+	}
+
+	/** @return {@code null} unless running on JDK 21+ */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			return null;
+		}
+	}
+
+	private static synchronized Executor executor() {
+		if (executor == null)
+			configure(0);
+		return executor;
+	}
+
+	static void execute(Runnable task) {
+		if (task == null)
+			throw new IllegalArgumentException("task = null");
+		queueDepth.incrementAndGet();
+		long t0 = System.nanoTime();
+		executor().execute(() -> {
+			queueDepth.decrementAndGet();
+			queueWait.record(System.nanoTime() - t0);
+			task.run();
+		});
+	}
+
+	/** @return the number of the tasks waiting for a thread */
+	static int getQueueDepth() { return queueDepth.get(); }
+}
@@ -0,0 +1,53 @@
+package ui;
+
+import da.DAO;
+
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * A SwingWorker run by the {@link BackgroundExecutor}. Unlike {@link #cancel}, {@link #abort} also cancels
+ * the statement the task is running on the DB.
+ * @author danis.tazeev@gmail.com
+ */
+abstract class BackgroundTask<T, V> extends SwingWorker<T, V> {
+	private static volatile int queryTimeoutSecs;
+	private volatile DAO dao;
+
+	/** @param seconds the max time a statement of a task may run; {@code 0} means no limit */
+	static void setQueryTimeout(int seconds) {
+		if (seconds < 0)
+			throw new IllegalArgumentException("seconds must be greater or equal to 0");
+		queryTimeoutSecs = seconds;
+	}
+
+	/** Use instead of {@link #execute} */
+	final void start() {
+		BackgroundExecutor.execute(this);
+	}
+
+	/**
+	 * Obtains a DAO to be cancelled by {@link #abort}. Invoke from {@link #doInBackground}.
+	 * A task aborted before it gets to the DB does not wait for a connection.
+	 * @throws CancellationException if the task has been aborted
+	 */
+	final <D extends DAO> D open(Supplier<D> factory) {
+		if (isCancelled())
+			throw new CancellationException("Task aborted");
+		D dao = factory.get();
+		dao.setQueryTimeout(queryTimeoutSecs);
+		this.dao = dao;
+		if (isCancelled())
+			dao.cancel();
+		return dao;
+	}
+
+	/** Cancels the task along with the statement it is running */
+	final void abort() {
+		cancel(false);
+		DAO d = dao;
+		if (d != null)
+			d.cancel();
+	}
+}
@@ -1,6 +1,7 @@
 package ui;
 
-import da.AttendanceDAO;
+import da.AttendanceWriter;
+import da.EmployeeDTO;
 import shared.Logging;
 import shared.LogicError;
 
@@ -10,20 +11,47 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /** @author danis.tazeev@gmail.com */
 final class CheckInOutPanel extends ActionContent {
 	static final String ACTION_COMMAND_CHECK_IN = "checkIn";
 	static final String ACTION_COMMAND_CHECK_OUT = "checkOut";
 
+	/** How long a check status lookup waits for the selection to stop changing */
+	private static int checkStatusDebounceMillis = 150;
+
+	static void setCheckStatusDebounceMillis(int millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("millis must be greater or equal to 0");
+		checkStatusDebounceMillis = millis;
+	}
+
+	/** How often the open shifts of all the employees are fetched again */
+	private static int openShiftsRefreshMillis = 30_000;
+
+	/** @param millis {@code 0} means the open shifts are fetched each time the employees change only */
+	static void setOpenShiftsRefreshMillis(int millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("millis must be greater or equal to 0");
+		openShiftsRefreshMillis = millis;
+	}
+
+	private final AttendanceWriter writer;
 	private final EmployeesComboBox employees;
 	private final JButton checkIn = new JButton("Пришёл");
 	private final JButton checkOut = new JButton("Ушёл");
-	private SwingWorker<Boolean, Void> worker;
+	private final CheckStatusCoalescer checkStatus = new CheckStatusCoalescer(checkStatusDebounceMillis);
+	private final OpenShiftPrefetcher openShifts;
 
-	CheckInOutPanel(EmployeesModel employeesModel) {
+	CheckInOutPanel(EmployeesModel employeesModel, AttendanceWriter writer) {
 		if (employeesModel == null)
 			throw new IllegalArgumentException("employeesModel = null");
+		if (writer == null)
+			throw new IllegalArgumentException("writer = null");
+		this.writer = writer;
+		openShifts = new OpenShiftPrefetcher(employeesModel, openShiftsRefreshMillis);
 
 		// NOTE: As soon as the EmployeesModel gets saturated the EmployeesComboBox emits an ActionEvent
 		// NOTE: Also it resizes and notifies with a ComponentEvent
@@ -47,7 +75,7 @@ final class CheckInOutPanel extends ActionContent {
 		checkOut.setActionCommand(ACTION_COMMAND_CHECK_OUT);
 		ActionListener l = e -> {
 			launchCheckTimestampPersister(e.getActionCommand(),
-					employees.getSelectedEmployee().getId(), System.currentTimeMillis());
+					employees.getSelectedEmployee(), System.currentTimeMillis());
 			// notify external listeners; the external listener will switch this view to another one
 			fireActionPerformed(e);
 		};
@@ -86,59 +114,16 @@ final class CheckInOutPanel extends ActionContent {
 
 	/** Invoke this method each time selection of the {@link #employees combo box} changes. */
 	private void launchCheckWhatFetcher() {
-		// throw away the result of the previously launched worker if any prematurely
-		if (worker != null) {
-			// If the attempt to cancel() succeeds, the worker nullifies 'worker' field
-			worker.cancel(false);
+		EmployeeDTO selected = employees.getSelectedEmployee();
+		Boolean prefetched = openShifts.hasNotCheckedOutYet(selected);
+		if (prefetched != null) {
+			checkStatus.cancel();
+			showCheckWhatWaiting();
+			showCheckWhat(prefetched);
+			return;
 		}
 		showCheckWhatWaiting();
-		// worker is nullified when finished; either due to cancellation or due to the task getting performed
-		worker = new SwingWorker<Boolean, Void>() {
-			@Override
-			protected Boolean doInBackground() throws Exception {
-				// NOTE: this method runs in a thread other than EDT
-				Thread.sleep(Main.getRandomDelay());
-				try (AttendanceDAO dao = new AttendanceDAO()) {
-					return dao.hasNotCheckedOutYet(employees.getSelectedEmployee().getId());
-				}
-			}
-
-			@Override
-			protected void done() {
-				// NOTE: this method runs in EDT
-				//
-				// If cancel() method of this SwingWorker is invoked in EDT, then this method is invoked from
-				// inside the cancel(). If cancel() is invoked from a thread other than EDT, then this method
-				// does not invoked from inside the cancel(). Instead the cancel() schedules invocation of this
-				// method to EDT.
-				//
-				// In this code cancel() is invoked is EDT only
-				//
-				// NOTE: Invocation of the cancel() can fail, in which case this method is not invoked from inside the
-				// cancel(). Instead invocation of this method is scheduled to EDT. The launchCheckWhatFetcher() also
-				// runs in EDT. It attempts to cancel() the current worker, and the attempt may fail and this method
-				// will not be invoked from cancel(). It will be invoked later. But after the cancellation attempt the
-				// launchCheckWhatFetcher() replaces the worker. So we MUST check whether the worker is still this one.
-
-				// This worker could be replaced by another one if the user selected
-				// another employee in the combo box while doInBackground() was working
-				if (worker == this) {
-					// this worker was not abandoned while it was working
-					try {
-						if (!isCancelled())
-							showCheckWhat(get());
-						// else: do nothing and throw away any results even if they already produced
-					} catch (Throwable err) {
-						Main.reportFailureAndTerminate(err);
-					} finally {
-						// When this SwingWorker instance is finished, nullify the 'worker' field
-						// Nullifying is allowed if and only if the worker is this SwingWorker instance
-						worker = null;
-					}
-				} // else: This worker was attempted to cancel() and then replaced with another one
-			}
-		};
-		worker.execute();
+		checkStatus.request(selected.getId(), this::showCheckWhat);
 	}
 
 	/**
@@ -146,33 +131,41 @@ final class CheckInOutPanel extends ActionContent {
 	 * @param actionCommand just the {@link ActionEvent#getActionCommand() action command} issued by the pressed button
 	 */
 	private void launchCheckTimestampPersister(
-			final String actionCommand, final long employeeId, final long timestamp) {
+			final String actionCommand, final EmployeeDTO employee, final long timestamp) {
 		showWholeViewIsWaiting();
-		new SwingWorker<Void, Void>() {
+		new BackgroundTask<Void, Void>() {
 			@Override
 			protected Void doInBackground() throws Exception {
 				Thread.sleep(Main.getRandomDelay());
-				try (AttendanceDAO dao = new AttendanceDAO()) {
-					switch (actionCommand) {
-						case ACTION_COMMAND_CHECK_IN: dao.checkIn(employeeId, timestamp); break;
-						case ACTION_COMMAND_CHECK_OUT: dao.checkOut(employeeId, timestamp); break;
-						default: Main.reportFailureAndTerminate(new Logging(Main.class).error(
-								new LogicError("Forbidden condition"),
-								"CheckInOutPanel fired an ActionEvent with an unexpected command: " + actionCommand));
-					}
+				CompletableFuture<Void> written;
+				switch (actionCommand) {
+					case ACTION_COMMAND_CHECK_IN: written = writer.checkIn(employee.getId(), timestamp); break;
+					case ACTION_COMMAND_CHECK_OUT: written = writer.checkOut(employee.getId(), timestamp); break;
+					default: throw new Logging(Main.class).error(
+							new LogicError("Forbidden condition"),
+							"CheckInOutPanel fired an ActionEvent with an unexpected command: " + actionCommand);
+				}
+				try {
+					return written.get();
+				} catch (ExecutionException ex) {
+					// let done() report the failure of the event itself
+					Throwable cause = ex.getCause();
+					if (cause instanceof Error)
+						throw (Error)cause;
+					throw cause instanceof Exception ? (Exception)cause : ex;
 				}
-				return null;
 			}
 
 			@Override
 			protected void done() {
 				try {
 					get(); // check if an error occured in diInBackground()
+					openShifts.setHasNotCheckedOutYet(employee, ACTION_COMMAND_CHECK_IN.equals(actionCommand));
 					showCheckWhat(ACTION_COMMAND_CHECK_IN.equals(actionCommand));
 				} catch (Throwable err) {
 					Main.reportFailureAndTerminate(err);
 				}
 			}
-		}.execute();
+		}.start();
 	}
 }
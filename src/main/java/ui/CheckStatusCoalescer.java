@@ -0,0 +1,89 @@
+package ui;
+
+import da.AttendanceDAO;
+
+import javax.swing.*;
+import java.util.function.Consumer;
+
+/**
+ * Looks up whether an employee has not checked out yet on behalf of a rapidly changing selection.
+ * A request is delayed until no other one comes within the debounce window, and only the last request
+ * is answered. A lookup in flight for another employee is aborted, and a lookup in flight for the same
+ * employee answers the request instead of a new one. Confined to EDT.
+ * @author danis.tazeev@gmail.com
+ */
+final class CheckStatusCoalescer {
+	private final Timer timer;
+	private long requestedId;
+	private Consumer<Boolean> callback;
+	private BackgroundTask<Boolean, Void> inFlight;
+	private long inFlightId;
+
+	/** @param debounceMillis how long a request waits for the next one */
+	CheckStatusCoalescer(int debounceMillis) {
+		if (debounceMillis < 0)
+			throw new IllegalArgumentException("debounceMillis must be greater or equal to 0");
+		timer = new Timer(debounceMillis, e -> launch());
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * Replaces the previous request, if any, which is never answered then.
+	 * @param callback receives {@code true} if the employee has not checked out yet; invoked in EDT
+	 */
+	void request(long employeeId, Consumer<Boolean> callback) {
+		if (callback == null)
+			throw new IllegalArgumentException("callback = null");
+		requestedId = employeeId;
+		this.callback = callback;
+		timer.restart();
+	}
+
+	/** Drops the pending request, if any, which is never answered then */
+	void cancel() {
+		timer.stop();
+		callback = null;
+		if (inFlight != null) {
+			inFlight.abort();
+			inFlight = null;
+		}
+	}
+
+	private void launch() {
+		if (inFlight != null) {
+			if (inFlightId == requestedId)
+				return; // its result answers the request
+			inFlight.abort();
+		}
+		final long employeeId = requestedId;
+		inFlightId = employeeId;
+		inFlight = new BackgroundTask<Boolean, Void>() {
+			@Override
+			protected Boolean doInBackground() throws Exception {
+				Thread.sleep(Main.getRandomDelay());
+				try (AttendanceDAO dao = open(AttendanceDAO::new)) {
+					return dao.hasNotCheckedOutYet(employeeId);
+				}
+			}
+
+			@Override
+			protected void done() {
+				// an aborted lookup may finish after being replaced
+				if (inFlight != this)
+					return;
+				inFlight = null;
+				try {
+					if (!isCancelled()) {
+						boolean result = get();
+						// the result is stale if another employee has been requested meanwhile
+						if (employeeId == requestedId && !timer.isRunning())
+							callback.accept(result);
+					}
+				} catch (Throwable err) {
+					Main.reportFailureAndTerminate(err);
+				}
+			}
+		};
+		inFlight.start();
+	}
+}
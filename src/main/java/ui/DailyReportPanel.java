@@ -1,8 +1,10 @@
 package ui;
 
 import da.AttendanceDAO;
-import da.AttendanceDTO;
+import da.AttendanceColumns;
+import da.AttendanceWatermark;
 import da.EmployeeDTO;
+import da.LongObjectMap;
 import shared.Logging;
 import shared.LogicError;
 
@@ -13,9 +15,9 @@ import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Map;
 
 import static ui.Main.DAY_MILLIS;
 import static ui.Main.toLocalMidnight;
@@ -27,7 +29,7 @@ final class DailyReportPanel extends ActionContent {
 	private final JSpinner dateChooser;
 	private final JButton report = new JButton("Отчёт");
 	private final JButton back = new JButton("Назад");
-	private SwingWorker worker;
+	private BackgroundTask<Report, Void> worker;
 
 	DailyReportPanel(final EmployeesModel employeesModel) {
 		super(new BorderLayout());
@@ -62,13 +64,14 @@ final class DailyReportPanel extends ActionContent {
 
 	private void resetView() {
 		if (worker != null)
-			worker.cancel(false);
+			worker.abort();
 		tableModel.setData(null);
 		showReportFetcherConfiguringControlsAreReady();
 	}
 
-	private void showReportFetcherConfiguringControlsAreWaiting() {
-		tableModel.setData(null);
+	private void showReportFetcherConfiguringControlsAreWaiting(boolean keepReport) {
+		if (!keepReport)
+			tableModel.setData(null);
 		dateChooser.setEnabled(false);
 		report.setEnabled(false);
 		back.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
@@ -82,17 +85,28 @@ final class DailyReportPanel extends ActionContent {
 		setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
 	}
 
+	/**
+	 * Fetches the whole report of the chosen day. If the report of the chosen day is already shown,
+	 * then fetches only the attendance changed since the last fetch and merges it into the shown report.
+	 */
 	private void launchReportFetcher() {
-		showReportFetcherConfiguringControlsAreWaiting();
-
 		// DO NOT move the next line into doInBackground() since doInBackground() runs in a thread other than EDT
 		final long chosenMidnight = ((Date)dateChooser.getValue()).getTime();
-		worker = new SwingWorker<Map<Long, AttendanceDTO[]>, Void>() {
+		final AttendanceWatermark since = tableModel.getWatermarkOf(chosenMidnight);
+		showReportFetcherConfiguringControlsAreWaiting(since != null);
+
+		worker = new BackgroundTask<Report, Void>() {
 			@Override
-			protected Map<Long, AttendanceDTO[]> doInBackground() throws Exception {
+			protected Report doInBackground() throws Exception {
 				Thread.sleep(Main.getRandomDelay());
-				try (AttendanceDAO dao = new AttendanceDAO()) {
-					return dao.selectAllEmployeesAttendanceBetween(chosenMidnight, chosenMidnight + DAY_MILLIS);
+				try (AttendanceDAO dao = open(AttendanceDAO::new)) {
+					// take the watermark first; whatever changes meanwhile is fetched by the next refresh
+					AttendanceWatermark until = dao.selectWatermark();
+					AttendanceColumns attendance = since == null
+							? dao.selectAllEmployeesAttendanceColumnsBetween(chosenMidnight, chosenMidnight + DAY_MILLIS)
+							: dao.selectAllEmployeesAttendanceChangedBetween(
+									chosenMidnight, chosenMidnight + DAY_MILLIS, since, until);
+					return new Report(chosenMidnight, until, attendance, since != null);
 				}
 			}
 
@@ -110,11 +124,14 @@ final class DailyReportPanel extends ActionContent {
 				}
 			}
 		};
-		worker.execute();
+		worker.start();
 	}
 
-	private void showReport(Map<Long, AttendanceDTO[]> attendance) {
-		tableModel.setData(attendance);
+	private void showReport(Report report) {
+		if (report.changesOnly)
+			tableModel.mergeData(report);
+		else
+			tableModel.setData(report);
 		if (employeesModel.hasEmployeesSet())
 			showReportFetcherConfiguringControlsAreReady();
 		else {
@@ -128,38 +145,59 @@ final class DailyReportPanel extends ActionContent {
 		}
 	}
 
-	private static final class CustomTableModel extends FixedColumnNamesTableModel {
+	static final class Report {
+		private final long midnight;
+		private final AttendanceWatermark watermark;
+		private final AttendanceColumns attendance;
+		/** Whether the {@link #attendance} is only what has changed since the previous report of the same day */
+		private final boolean changesOnly;
+
+		Report(long midnight, AttendanceWatermark watermark, AttendanceColumns attendance, boolean changesOnly) {
+			this.midnight = midnight;
+			this.watermark = watermark;
+			this.attendance = attendance;
+			this.changesOnly = changesOnly;
+		}
+	}
+
+	static final class CustomTableModel extends FixedColumnNamesTableModel {
 		private final EmployeesModel employeesModel;
-		private Map<Long, AttendanceDTO[]> data;
+		private Report data;
 
+		/*
+		 * The attendance shown in each table row. The single table row of an employee who has no attendance
+		 * has 0 checkedIn. The capacity of the arrays may exceed the rowCount to let rows be inserted.
+		 */
+		private int rowCount;
+		private long[] rowIds;
+		private long[] rowCheckedIns;
+		private long[] rowCheckedOuts;
+		/** The employees shown; replaced on each change of the {@code employeesModel} */
+		private EmployeeDTO[] employees;
 		/**
-		 * Each 32-bit value represents two numbers:
-		 * <ul>
-		 *     <li>The highest 22 bits is the index of an {@link EmployeeDTO} in the
-		 *     {@link EmployeesModel#getEmployees() EmployeeDTO[]} array.</li>
-		 *     <li>The lowest 10 bits is the index in {@code AttendanceDTO[]} array found in the {@link #data} map.
-		 *     If the map does not contain a mapping for the {@code employeeId} of the {@code EmployeeDTO} from the
-		 *     highest 22-bit index, then the lowest 10 bits are ignored.</li>
-		 * </ul>
+		 * The first table row of each employee indexed the same way as
+		 * {@link #employees}, followed by the table row count.
+		 * Since each employee has at least one table row, the values strictly increase.
 		 */
-		private int[] index;
+		private int[] employeeFirstRows;
+		/** {@code employeeId} to the index in {@code EmployeeDTO[]}; built by the first merge */
+		private LongObjectMap<Integer> employeeIndexes;
 
-		private CustomTableModel(final EmployeesModel employeesModel) {
+		CustomTableModel(final EmployeesModel employeesModel) {
 			super(new String[] { "Сотрудник", "Пришёл", "Ушёл" });
 			assert employeesModel != null;
 			this.employeesModel = employeesModel;
-			if (!employeesModel.hasEmployeesSet()) {
-				employeesModel.addChangeListener(new ChangeListener() {
-					@Override
-					public void stateChanged(ChangeEvent e) {
-						employeesModel.removeChangeListener(this);
-						if (data != null) {
-							buildIndex();
-							fireTableDataChanged();
-						}
-					}
-				});
-			}
+			employeesModel.addChangeListener(e -> employeesChanged());
+		}
+
+		private void employeesChanged() {
+			if (data == null)
+				return;
+			if (rowIds == null)
+				buildIndex();
+			else
+				remapRows();
+			fireTableDataChanged();
 		}
 
 		@Override
@@ -167,11 +205,18 @@ final class DailyReportPanel extends ActionContent {
 			return col == 0 ? EmployeeDTO.class : Date.class;
 		}
 
-		private void setData(Map<Long, AttendanceDTO[]> data) {
+		/** @return {@code null} unless the report of the given day is shown */
+		private AttendanceWatermark getWatermarkOf(long midnight) {
+			return data != null && data.midnight == midnight && rowIds != null ? data.watermark : null;
+		}
+
+		void setData(Report data) {
 			Object oldData = this.data;
 			this.data = data;
 			if (data == null && oldData != null) {
-				index = null; // clear index
+				rowIds = rowCheckedIns = rowCheckedOuts = null; // clear index
+				employeeFirstRows = null;
+				employeeIndexes = null;
 				fireTableDataChanged();
 			} else if (data != null && employeesModel.hasEmployeesSet()) {
 				buildIndex();
@@ -182,55 +227,153 @@ final class DailyReportPanel extends ActionContent {
 		private void buildIndex() {
 			assert data != null && employeesModel.hasEmployeesSet();
 
-			EmployeeDTO[] employees = employeesModel.getEmployees();
-			if (employees.length > 0x3FFFFF) {
+			AttendanceColumns attendance = data.attendance;
+			employees = employeesModel.getEmployees();
+			long n = (long)employees.length - attendance.employeeCount() + attendance.size();
+			if (n > Integer.MAX_VALUE) {
 				Main.reportFailureAndTerminate(new Logging(DailyReportPanel.class).error(
 						new LogicError("Broken invariant"),
-						"The length of EmployeeDTO[] is greater than 2^22"));
+						"The number of report rows is greater than 2^31 - 1"));
+				return;
+			}
+			rowCount = (int)n;
+			rowIds = new long[rowCount];
+			rowCheckedIns = new long[rowCount];
+			rowCheckedOuts = new long[rowCount];
+			employeeFirstRows = new int[employees.length + 1];
+			employeeIndexes = null;
+
+			int j = 0;
+			for (int i = 0; i < employees.length; i++) {
+				employeeFirstRows[i] = j;
+				int slot = attendance.slotOf(employees[i].getId());
+				if (slot < 0)
+					j++; // zeros stand for no attendance
+				else {
+					for (int attRow = attendance.startOf(slot), end = attendance.endOf(slot); attRow < end; attRow++, j++) {
+						rowIds[j] = attendance.getId(attRow);
+						rowCheckedIns[j] = attendance.getCheckedIn(attRow);
+						rowCheckedOuts[j] = attendance.getCheckedOut(attRow);
+					}
+				}
 			}
+			employeeFirstRows[employees.length] = j;
+			data = new Report(data.midnight, data.watermark, null, false); // the rows are copied; let them go
+		}
 
-			int dataRowCount = 0;
-			for (AttendanceDTO[] x : data.values())
-				dataRowCount += x.length;
-			int indexLength = employees.length - data.size() + dataRowCount;
-			index = new int[indexLength];
-
-			for (int i = 0, j = 0; i < employees.length; i++) {
-				EmployeeDTO emp = employees[i];
-				AttendanceDTO[] attx = data.get(emp.getId());
-				if (attx == null)
-					index[j++] = i << 10;
+		/** Rearranges the rows shown in the order of the changed employees. The rows of the removed ones are dropped */
+		private void remapRows() {
+			EmployeeDTO[] oldEmployees = employees;
+			int[] oldFirstRows = employeeFirstRows;
+			LongObjectMap<Integer> oldIndexes = new LongObjectMap<>(oldEmployees.length);
+			for (int i = 0; i < oldEmployees.length; i++)
+				oldIndexes.put(oldEmployees[i].getId(), i);
+			employees = employeesModel.getEmployees();
+			employeeIndexes = null;
+
+			int n = 0;
+			for (EmployeeDTO employee : employees) {
+				Integer old = oldIndexes.get(employee.getId());
+				n += old == null ? 1 : oldFirstRows[old + 1] - oldFirstRows[old];
+			}
+			long[] ids = new long[n];
+			long[] checkedIns = new long[n];
+			long[] checkedOuts = new long[n];
+			employeeFirstRows = new int[employees.length + 1];
+			int j = 0;
+			for (int i = 0; i < employees.length; i++) {
+				employeeFirstRows[i] = j;
+				Integer old = oldIndexes.get(employees[i].getId());
+				if (old == null)
+					j++; // zeros stand for no attendance
 				else {
-					if (attx.length > 0x3FF) {
-						Main.reportFailureAndTerminate(new Logging(DailyReportPanel.class).error(
-								new LogicError("Broken invariant"),
-								"The length of AttendanceDTO[] is greater than 2^10"));
+					int first = oldFirstRows[old];
+					int count = oldFirstRows[old + 1] - first;
+					System.arraycopy(rowIds, first, ids, j, count);
+					System.arraycopy(rowCheckedIns, first, checkedIns, j, count);
+					System.arraycopy(rowCheckedOuts, first, checkedOuts, j, count);
+					j += count;
+				}
+			}
+			employeeFirstRows[employees.length] = j;
+			rowCount = n;
+			rowIds = ids;
+			rowCheckedIns = checkedIns;
+			rowCheckedOuts = checkedOuts;
+		}
+
+		/**
+		 * Merges the changed attendance into the rows shown and notifies about each updated or inserted row.
+		 * @param changes the report of the day shown with {@link Report#changesOnly changes only}
+		 */
+		private void mergeData(Report changes) {
+			assert changes.changesOnly && getWatermarkOf(changes.midnight) != null;
+			data = new Report(data.midnight, changes.watermark, null, false);
+			if (employeeIndexes == null) {
+				employeeIndexes = new LongObjectMap<>(employees.length);
+				for (int i = 0; i < employees.length; i++)
+					employeeIndexes.put(employees[i].getId(), i);
+			}
+
+			AttendanceColumns attendance = changes.attendance;
+			for (int attRow = 0; attRow < attendance.size(); attRow++) {
+				Integer employee = employeeIndexes.get(attendance.getEmployeeId(attRow));
+				if (employee == null)
+					continue; // not among the employees shown
+				long id = attendance.getId(attRow);
+				int first = employeeFirstRows[employee];
+				int end = employeeFirstRows[employee + 1];
+				int row;
+				boolean inserted = false;
+				if (rowCheckedIns[first] == 0) // the employee had no attendance so far
+					row = first;
+				else {
+					// the rows of an employee are ordered by id
+					for (row = first; row < end && rowIds[row] < id; row++);
+					if (row == end || rowIds[row] != id) {
+						insertRow(row, employee);
+						inserted = true;
 					}
-					int emp_idx = i << 10;
-					for (int att_idx = 0; att_idx < attx.length; att_idx++)
-						index[j++] = emp_idx | att_idx & 0x3FF;
 				}
+				rowIds[row] = id;
+				rowCheckedIns[row] = attendance.getCheckedIn(attRow);
+				rowCheckedOuts[row] = attendance.getCheckedOut(attRow);
+				if (inserted)
+					fireTableRowsInserted(row, row);
+				else
+					fireTableRowsUpdated(row, row);
+			}
+		}
+
+		private void insertRow(int row, int employee) {
+			if (rowCount == rowIds.length) {
+				int capacity = rowCount + (rowCount >> 1) + 1;
+				rowIds = Arrays.copyOf(rowIds, capacity);
+				rowCheckedIns = Arrays.copyOf(rowCheckedIns, capacity);
+				rowCheckedOuts = Arrays.copyOf(rowCheckedOuts, capacity);
 			}
+			System.arraycopy(rowIds, row, rowIds, row + 1, rowCount - row);
+			System.arraycopy(rowCheckedIns, row, rowCheckedIns, row + 1, rowCount - row);
+			System.arraycopy(rowCheckedOuts, row, rowCheckedOuts, row + 1, rowCount - row);
+			rowCount++;
+			for (int i = employee + 1; i < employeeFirstRows.length; i++)
+				employeeFirstRows[i]++;
 		}
 
 		@Override
 		public int getRowCount() {
-			return data == null || !employeesModel.hasEmployeesSet() ? 0 : index.length;
+			return rowIds == null ? 0 : rowCount;
 		}
 
 		@Override
 		public Object getValueAt(int row, int col) {
-			int tuple = index[row];
-			EmployeeDTO employee = employeesModel.getEmployees()[tuple >> 10];
-			if (col == 0)
-				return employee;
-
-			AttendanceDTO[] attx = data.get(employee.getId());
-			if (attx == null)
-				return null;
+			if (col == 0) {
+				int i = Arrays.binarySearch(employeeFirstRows, row);
+				// not found means the row is not the first row of an employee; -i - 1 is the next employee then
+				return employees[i >= 0 ? i : -i - 2];
+			}
 
-			AttendanceDTO attendance = attx[tuple & 0x3FF];
-			long ts = col == 1 ? attendance.getCheckedIn() : attendance.getCheckedOut();
+			long ts = col == 1 ? rowCheckedIns[row] : rowCheckedOuts[row];
 			return ts == 0 ? null : new Date(ts);
 		}
 	}
@@ -0,0 +1,152 @@
+package ui;
+
+import da.EmployeeDTO;
+
+import java.util.Arrays;
+
+/**
+ * Finds the employees having a word of the name starting with the given prefix. The search ignores the case,
+ * and 'ё' matches 'е'. Each word start of each name is an entry of an array ordered by the rest of the name
+ * starting there, so the entries matching a prefix make a range found by binary search.
+ * @author danis.tazeev@gmail.com
+ */
+final class EmployeeNameIndex {
+	private final EmployeeDTO[] employees;
+	/** The normalized names indexed the same way as {@link #employees} */
+	private final String[] names;
+	/** {@code employee << 32 | offset} of each word start ordered by the rest of the name */
+	private final long[] entries;
+	/** One bit per employee; collects the employees found without sorting them */
+	private final long[] found;
+
+	/** @param employees ordered by name */
+	EmployeeNameIndex(EmployeeDTO[] employees) {
+		assert employees != null;
+		this.employees = employees;
+		names = new String[employees.length];
+		int n = 0;
+		for (int i = 0; i < employees.length; i++) {
+			names[i] = normalize(employees[i].getName());
+			for (int j = 0; j < names[i].length(); j++) {
+				if (isWordStart(names[i], j))
+					n++;
+			}
+		}
+		// the suffixes are materialized for sorting only, since String.compareTo is by far faster than char by char
+		Suffix[] suffixes = new Suffix[n];
+		n = 0;
+		for (int i = 0; i < names.length; i++) {
+			for (int j = 0; j < names[i].length(); j++) {
+				if (isWordStart(names[i], j))
+					suffixes[n++] = new Suffix(names[i].substring(j), (long)i << 32 | j);
+			}
+		}
+		Arrays.sort(suffixes);
+		entries = new long[n];
+		for (int i = 0; i < n; i++)
+			entries[i] = suffixes[i].entry;
+		found = new long[employees.length + 63 >>> 6];
+	}
+
+	/** Lower case with 'ё' replaced by 'е' */
+	static String normalize(String s) {
+		char[] cs = new char[s.length()];
+		for (int i = 0; i < cs.length; i++) {
+			char c = Character.toLowerCase(s.charAt(i));
+			cs[i] = c == 'ё' ? 'е' : c;
+		}
+		return new String(cs);
+	}
+
+	private static boolean isWordStart(String name, int i) {
+		return Character.isLetterOrDigit(name.charAt(i))
+				&& (i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1)));
+	}
+
+	private static final class Suffix implements Comparable<Suffix> {
+		private final String rest;
+		private final long entry;
+
+		private Suffix(String rest, long entry) {
+			this.rest = rest;
+			this.entry = entry;
+		}
+
+		@Override
+		public int compareTo(Suffix o) { return rest.compareTo(o.rest); }
+	}
+
+	/** Compares the first {@code prefix.length()} chars of the entry to the {@code prefix} */
+	private int comparePrefix(long entry, String prefix) {
+		String s = names[(int)(entry >>> 32)];
+		int i = (int)entry;
+		for (int j = 0; j < prefix.length(); i++, j++) {
+			if (i == s.length())
+				return -1;
+			if (s.charAt(i) != prefix.charAt(j))
+				return s.charAt(i) - prefix.charAt(j);
+		}
+		return 0;
+	}
+
+	/** @return the first entry not less than the {@code prefix}, or past the last entry starting with it */
+	private int bound(String prefix, boolean upper) {
+		int lo = 0;
+		int hi = entries.length;
+		while (lo < hi) {
+			int mid = lo + hi >>> 1;
+			int c = comparePrefix(entries[mid], prefix);
+			if (c < 0 || upper && c == 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * MUST be called on one thread only, since the result is collected in the shared bit set.
+	 * @param query the words to be matched against the starts of the words of a name in any order
+	 * @return the employees found in the order of names. Never {@code null}
+	 */
+	EmployeeDTO[] find(String query) {
+		String[] words = normalize(query).split("[^\\p{L}\\p{Nd}]+");
+		// the longest word is likely the most selective one
+		String longest = "";
+		for (String w : words) {
+			if (w.length() > longest.length())
+				longest = w;
+		}
+		if (longest.isEmpty())
+			return employees;
+		int from = bound(longest, false);
+		int to = bound(longest, true);
+		for (int k = from; k < to; k++) {
+			int i = (int)(entries[k] >>> 32);
+			found[i >>> 6] |= 1L << i;
+		}
+
+		EmployeeDTO[] result = new EmployeeDTO[to - from];
+		int n = 0;
+		for (int w = 0; w < found.length; w++) {
+			for (long bits = found[w]; bits != 0; bits &= bits - 1) {
+				int i = w << 6 | Long.numberOfTrailingZeros(bits);
+				if (hasWordsStartingWith(names[i], words))
+					result[n++] = employees[i];
+			}
+		}
+		Arrays.fill(found, 0);
+		return Arrays.copyOf(result, n);
+	}
+
+	private static boolean hasWordsStartingWith(String name, String[] words) {
+		for (String w : words) {
+			boolean has = w.isEmpty();
+			for (int i = name.indexOf(w); i >= 0 && !has; i = name.indexOf(w, i + 1))
+				has = isWordStart(name, i);
+			if (!has)
+				return false;
+		}
+		return true;
+	}
+}
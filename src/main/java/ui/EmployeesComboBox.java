@@ -3,58 +3,148 @@ package ui;
 import da.EmployeeDTO;
 
 import javax.swing.*;
-import javax.swing.event.ChangeEvent;
-import javax.swing.event.ChangeListener;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 import java.awt.*;
 
-/** @author danis.tazeev@gmail.com */
+/**
+ * Typing while the combo box has the focus narrows the list down to the employees having a word of the name
+ * starting with what has been typed. A pause longer than {@code ComboBox.timeFactor} starts a new query,
+ * and closing the list shows all the employees again.
+ * @author danis.tazeev@gmail.com
+ */
 final class EmployeesComboBox extends JComboBox<EmployeeDTO> {
+	private final StringBuilder query = new StringBuilder();
+	private long lastTypedAt;
+
 	EmployeesComboBox(EmployeesModel employeesModel) {
 		super(new CustomComboBoxModel(employeesModel));
 		if (employeesModel == null)
 			throw new IllegalArgumentException("employeesModel = null");
 		setMaximumRowCount(25);
 		setRenderer(new EmployeeRenderer());
+		addPopupMenuListener(new PopupMenuListener() {
+			@Override
+			public void popupMenuWillBecomeVisible(PopupMenuEvent e) {}
+
+			@Override
+			public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+				query.setLength(0);
+				getCustomModel().setFilter("");
+			}
+
+			@Override
+			public void popupMenuCanceled(PopupMenuEvent e) {}
+		});
 	}
 
 	EmployeeDTO getSelectedEmployee() {
 		return (EmployeeDTO)getSelectedItem();
 	}
 
+	private CustomComboBoxModel getCustomModel() {
+		return (CustomComboBoxModel)getModel();
+	}
+
+	/** Replaces the selection of the next item starting with the typed char with filtering */
+	@Override
+	public boolean selectWithKeyChar(char keyChar) {
+		long now = System.currentTimeMillis();
+		Object timeFactor = UIManager.get("ComboBox.timeFactor");
+		if (now - lastTypedAt > (timeFactor instanceof Long ? (Long)timeFactor : 1000L))
+			query.setLength(0);
+		lastTypedAt = now;
+
+		int length = query.length();
+		if (keyChar == '\b') {
+			if (length == 0)
+				return false;
+			query.setLength(length - 1);
+		} else
+			query.append(keyChar);
+		if (!getCustomModel().setFilter(query.toString())) {
+			query.setLength(length); // nothing matches; ignore the char
+			return false;
+		}
+		if (isShowing() && !isPopupVisible())
+			setPopupVisible(true);
+		return true;
+	}
+
 	private static final class CustomComboBoxModel
 			extends AbstractListModel<EmployeeDTO>
 			implements ComboBoxModel<EmployeeDTO> {
 		private final EmployeesModel employeesModel;
+		/** The employees shown: either all of them or the ones matching the {@link #filter} */
+		private EmployeeDTO[] employees = new EmployeeDTO[0];
+		private String filter = "";
 		private Object selectedItem;
 
 		private CustomComboBoxModel(final EmployeesModel employeesModel) {
 			assert employeesModel != null;
 			this.employeesModel = employeesModel;
-			if (!employeesModel.hasEmployeesSet()) {
-				employeesModel.addChangeListener(new ChangeListener() {
-					@Override
-					public void stateChanged(ChangeEvent e) {
-						employeesModel.removeChangeListener(this);
-						EmployeeDTO[] employees = employeesModel.getEmployees();
-						if (employees.length > 0) {
-							fireIntervalAdded(CustomComboBoxModel.this, 0, employees.length - 1);
-							setSelectedItem(employees[0]);
-						}
-					}
-				});
+			if (employeesModel.hasEmployeesSet())
+				employees = employeesModel.getEmployees();
+			employeesModel.addChangeListener(e -> employeesChanged());
+		}
+
+		private void employeesChanged() {
+			show(filter.isEmpty() ? employeesModel.getEmployees() : employeesModel.getNameIndex().find(filter));
+			// an employee not changed keeps the instance; a changed one is found by id
+			EmployeeDTO selected = null;
+			for (EmployeeDTO e : employeesModel.getEmployees()) {
+				if (e == selectedItem)
+					return;
+				if (selectedItem != null && e.getId() == ((EmployeeDTO)selectedItem).getId())
+					selected = e;
+			}
+			setSelectedItem(selected != null ? selected : employees.length > 0 ? employees[0] : null);
+		}
+
+		/**
+		 * Shows only the employees matching the {@code filter}, and selects the first of them unless
+		 * the selected one is among them. The empty filter shows all the employees.
+		 * @return {@code false} if no employee matches; nothing is changed then
+		 */
+		private boolean setFilter(String filter) {
+			if (!employeesModel.hasEmployeesSet())
+				return false;
+			EmployeeDTO[] found = filter.isEmpty()
+					? employeesModel.getEmployees()
+					: employeesModel.getNameIndex().find(filter);
+			if (found.length == 0)
+				return false;
+			this.filter = filter;
+			show(found);
+			for (EmployeeDTO e : found) {
+				if (e == selectedItem)
+					return true;
 			}
+			setSelectedItem(found[0]);
+			return true;
+		}
+
+		private void show(EmployeeDTO[] employees) {
+			EmployeeDTO[] old = this.employees;
+			this.employees = employees;
+			if (employees.length < old.length)
+				fireIntervalRemoved(this, employees.length, old.length - 1);
+			else if (employees.length > old.length)
+				fireIntervalAdded(this, old.length, employees.length - 1);
+			if (Math.min(old.length, employees.length) > 0)
+				fireContentsChanged(this, 0, Math.min(old.length, employees.length) - 1);
 		}
 
 		@Override
 		public int getSize() {
-			return !employeesModel.hasEmployeesSet() ? 0 : employeesModel.getEmployees().length;
+			return employees.length;
 		}
 
 		@Override
 		public EmployeeDTO getElementAt(int index) {
 			if (index < 0 || index >= getSize())
-				throw new IllegalArgumentException("index = null");
-			return employeesModel.getEmployees()[index];
+				throw new IllegalArgumentException("index = " + index);
+			return employees[index];
 		}
 
 		@Override
@@ -11,17 +11,24 @@ final class EmployeesModel {
 	private final EventListenerList listeners = new EventListenerList();
 	private final ChangeEvent theChangeEvent = new ChangeEvent(this);
 	private EmployeeDTO[] employees;
+	/** The index of the current {@link #employees} */
+	private EmployeeNameIndex nameIndex;
 
 	boolean hasEmployeesSet() {
 		return employees != null;
 	}
 
-	void setEmployees(EmployeeDTO[] employees) {
+	/**
+	 * Each change replaces the whole array, but the {@code EmployeeDTO} instances of the employees not changed
+	 * stay the same, so the listeners may tell the changed employees by identity.
+	 * @param employees ordered by name
+	 * @param nameIndex the index of the {@code employees} built off EDT; {@code null} to build it on demand
+	 */
+	void setEmployees(EmployeeDTO[] employees, EmployeeNameIndex nameIndex) {
 		if (employees == null)
 			throw new IllegalArgumentException("employees = null");
-		if (this.employees != null)
-			throw new IllegalStateException("employees has already been set. It is allowed to set employees only once");
 		this.employees = employees;
+		this.nameIndex = nameIndex;
 		fireStateChange();
 	}
 
@@ -31,6 +38,12 @@ final class EmployeesModel {
 		return employees;
 	}
 
+	EmployeeNameIndex getNameIndex() {
+		if (nameIndex == null)
+			nameIndex = new EmployeeNameIndex(getEmployees());
+		return nameIndex;
+	}
+
 	void addChangeListener(ChangeListener l) {
 		if (l == null)
 			throw new IllegalArgumentException("l = null");
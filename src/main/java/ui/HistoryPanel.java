@@ -1,7 +1,7 @@
 package ui;
 
 import da.AttendanceDAO;
-import da.AttendanceDTO;
+import da.AttendanceColumns;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -24,7 +24,7 @@ final class HistoryPanel extends ActionContent {
 	private final JSpinner toDateChooser;
 	private final JButton history = new JButton("История");
 	private final JButton back = new JButton("Назад");
-	private SwingWorker worker;
+	private BackgroundTask<AttendanceColumns, Void> worker;
 
 	HistoryPanel(final EmployeesModel employeesModel) {
 		super(new BorderLayout());
@@ -97,7 +97,7 @@ final class HistoryPanel extends ActionContent {
 
 	private void resetView() {
 		if (worker != null)
-			worker.cancel(false);
+			worker.abort();
 		tableModel.setData(null);
 		showHistoryFetcherConfiguringControlsAreReady();
 		if (!employeesModel.hasEmployeesSet())
@@ -144,12 +144,12 @@ final class HistoryPanel extends ActionContent {
 		final long fromMidnight = ((Date)fromDateChooser.getValue()).getTime();
 		final long toMidnight = ((Date)toDateChooser.getValue()).getTime();
 
-		worker = new SwingWorker<AttendanceDTO[], Void>() {
+		worker = new BackgroundTask<AttendanceColumns, Void>() {
 			@Override
-			protected AttendanceDTO[] doInBackground() throws Exception {
+			protected AttendanceColumns doInBackground() throws Exception {
 				Thread.sleep(Main.getRandomDelay());
-				try (AttendanceDAO dao = new AttendanceDAO()) {
-					return dao.selectEmployeeAttendanceBetween(employeeId, fromMidnight, toMidnight);
+				try (AttendanceDAO dao = open(AttendanceDAO::new)) {
+					return dao.selectEmployeeAttendanceColumnsBetween(employeeId, fromMidnight, toMidnight);
 				}
 			}
 
@@ -167,17 +167,17 @@ final class HistoryPanel extends ActionContent {
 				}
 			}
 		};
-		worker.execute();
+		worker.start();
 	}
 
-	private void showHistory(AttendanceDTO[] attendance) {
+	private void showHistory(AttendanceColumns attendance) {
 		tableModel.setData(attendance);
 		showHistoryFetcherConfiguringControlsAreReady();
 	}
 
 	private static final class CustomTableModel extends FixedColumnNamesTableModel {
 		private final EmployeesModel employeesModel;
-		private AttendanceDTO[] data;
+		private AttendanceColumns data;
 
 		private CustomTableModel(EmployeesModel employeesModel) {
 			super(new String[] { "Пришёл", "Ушёл" });
@@ -200,7 +200,7 @@ final class HistoryPanel extends ActionContent {
 			return Date.class;
 		}
 
-		private void setData(AttendanceDTO[] data) {
+		private void setData(AttendanceColumns data) {
 			Object oldData = this.data;
 			this.data = data;
 			if (data == null && oldData != null || data != null && employeesModel.hasEmployeesSet())
@@ -209,13 +209,12 @@ final class HistoryPanel extends ActionContent {
 
 		@Override
 		public int getRowCount() {
-			return data == null || !employeesModel.hasEmployeesSet() ? 0 : data.length;
+			return data == null || !employeesModel.hasEmployeesSet() ? 0 : data.size();
 		}
 
 		@Override
 		public Object getValueAt(int row, int col) {
-			AttendanceDTO attendance = data[row];
-			long ts = col == 0 ? attendance.getCheckedIn() : attendance.getCheckedOut();
+			long ts = col == 0 ? data.getCheckedIn(row) : data.getCheckedOut(row);
 			return ts == 0 ? null : new Date(ts);
 		}
 	}
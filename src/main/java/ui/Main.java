@@ -1,13 +1,25 @@
 package ui;
 
+import da.AttendanceArchive;
+import da.AttendanceDAO;
+import da.AttendanceJournal;
+import da.AttendanceWriter;
+import da.ConnectionPool;
 import da.DAO;
 import da.DbInitializer;
-import da.EmployeeDAO;
-import da.EmployeeDTO;
+import da.EmployeeCache;
+import da.RollupMaintainer;
 import shared.Logging;
 import shared.LogicError;
+import shared.MetricsDumper;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Random;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
@@ -37,31 +49,113 @@ final class Main {
 		return rnd.nextInt(maxDelaySecs * 1000 + 1);
 	}
 
+	/** The number of pooled connections; {@code 0} means the single connection is shared by all DAOs */
+	private static int poolSize = 4;
+
+	/** The number of threads running the background tasks; {@code 0} means a virtual thread per task if available */
+	private static int workerThreads;
+
+	/** How often the metrics are logged; {@code 0} means on exit only */
+	private static int metricsDumpSecs = 60;
+
+	/** A DAO holding its connection longer is reported with the stack of its thread; {@code 0} means never */
+	private static int slowHolderMillis = 2000;
+
+	/** @return the parsed non-negative value or {@code -1} if the {@code value} is invalid */
+	private static int parseNonNegativeInt(String opt, String value, String fallback) {
+		try {
+			int n = Integer.parseInt(value);
+			if (n >= 0)
+				return n;
+			System.err.printf("Invalid %s. Expected non-negative integer. Supplied: %d"
+					+ "%nProceeding with %s...%n", opt, n, fallback);
+		} catch (NumberFormatException ex) {
+			System.err.printf("Invalid %s. Expected integer. Supplied: '%s'"
+					+ "%nProceeding with %s...%n", opt, value, fallback);
+		}
+		return -1;
+	}
+
 	public static void main(String... args) {
-		final String opt = "--max-delay-secs";
-		if (args.length >= 2) {
-			if (opt.equals(args[0])) {
-				try {
-					maxDelaySecs = Integer.parseInt(args[1]);
-					if (maxDelaySecs < 0) {
-						System.err.printf("Invalid %s. Expected non-negative integer. Supplied: %d"
-								+ "%nProceeding with no fake delays...%n", opt, maxDelaySecs);
-						maxDelaySecs = 0;
-					} else
-						rnd = new Random();
-				} catch (NumberFormatException ex) {
-					System.err.printf("Invalid %s. Expected integer. Supplied: '%s'"
-							+ "%nProceeding with no fake delays...%n", opt, args[1]);
-				}
-			} else
+		final String optDelay = "--max-delay-secs";
+		final String optPool = "--pool-size";
+		final String optWorkers = "--worker-threads";
+		final String optTimeout = "--query-timeout-secs";
+		final String optDebounce = "--check-debounce-millis";
+		final String optRefresh = "--open-shifts-refresh-secs";
+		final String optMetrics = "--metrics-dump-secs";
+		final String optSlowHolder = "--slow-holder-millis";
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (optDelay.equals(args[i])) {
+				maxDelaySecs = Math.max(parseNonNegativeInt(optDelay, args[i + 1], "no fake delays"), 0);
+				if (maxDelaySecs > 0)
+					rnd = new Random();
+			} else if (optPool.equals(args[i])) {
+				int n = parseNonNegativeInt(optPool, args[i + 1], "the default pool size");
+				if (n >= 0)
+					poolSize = n;
+			} else if (optWorkers.equals(args[i])) {
+				int n = parseNonNegativeInt(optWorkers, args[i + 1], "virtual threads if available");
+				if (n >= 0)
+					workerThreads = n;
+			} else if (optTimeout.equals(args[i])) {
+				int n = parseNonNegativeInt(optTimeout, args[i + 1], "no query timeout");
+				if (n >= 0)
+					BackgroundTask.setQueryTimeout(n);
+			} else if (optDebounce.equals(args[i])) {
+				int n = parseNonNegativeInt(optDebounce, args[i + 1], "the default debounce");
+				if (n >= 0)
+					CheckInOutPanel.setCheckStatusDebounceMillis(n);
+			} else if (optRefresh.equals(args[i])) {
+				int n = parseNonNegativeInt(optRefresh, args[i + 1], "the default refresh period");
+				if (n >= 0)
+					CheckInOutPanel.setOpenShiftsRefreshMillis((int)Math.min(TimeUnit.SECONDS.toMillis(n), Integer.MAX_VALUE));
+			} else if (optMetrics.equals(args[i])) {
+				int n = parseNonNegativeInt(optMetrics, args[i + 1], "the default dump period");
+				if (n >= 0)
+					metricsDumpSecs = n;
+			} else if (optSlowHolder.equals(args[i])) {
+				int n = parseNonNegativeInt(optSlowHolder, args[i + 1], "the default threshold");
+				if (n >= 0)
+					slowHolderMillis = n;
+			} else {
 				System.err.printf("Unknown option: '%s'"
-						+ "%nUsage: java %s [%s <non-negative int>] [<anything>]"
-						+ "%nProceeding anyway...%n", args[0], Main.class.getName(), opt);
+						+ "%nUsage: java %s [%s <non-negative int>] [%s <non-negative int>] [%s <non-negative int>]"
+						+ " [%s <non-negative int>] [%s <non-negative int>] [%s <non-negative int>]"
+						+ " [%s <non-negative int>] [%s <non-negative int>] [<anything>]%nProceeding anyway...%n",
+						args[i], Main.class.getName(), optDelay, optPool, optWorkers, optTimeout, optDebounce, optRefresh,
+						optMetrics, optSlowHolder);
+				break;
+			}
+		}
+
+		BackgroundExecutor.configure(workerThreads);
+		DAO.watchSlowHolders(slowHolderMillis);
+		if (poolSize > 0) {
+			DAO.usePool(new ConnectionPool(poolSize,
+					TimeUnit.SECONDS.toMillis(30), TimeUnit.MINUTES.toMillis(5), 1));
 		}
 
+		final AttendanceJournal journal = openJournal();
+		final AttendanceWriter writer = new AttendanceWriter(100, 5, 10_000);
+		final RollupMaintainer[] rollupMaintainer = new RollupMaintainer[1]; // started once the DB is initialized
+		final EmployeeCache[] employeeCache = new EmployeeCache[1];
+		final MetricsDumper metricsDumper = new MetricsDumper(metricsDumpSecs > 0
+				? TimeUnit.SECONDS.toMillis(metricsDumpSecs) : Long.MAX_VALUE);
 		Runtime.getRuntime().addShutdownHook(new Thread("DAO Terminator") {
 			@Override
-			public void run() { DAO.terminate(); }
+			public void run() {
+				writer.close();
+				if (journal != null)
+					journal.close();
+				if (employeeCache[0] != null)
+					employeeCache[0].close();
+				if (rollupMaintainer[0] != null)
+					rollupMaintainer[0].close();
+				DAO.terminate();
+				metricsDumper.close();
+				Logging.shutdown();
+			}
 		});
 
 		try {
@@ -72,7 +166,7 @@ final class Main {
 				JOptionPane.setRootFrame(frame);
 
 				StartPanel startPanel = new StartPanel();
-				CheckInOutPanel checkInOutPanel = new CheckInOutPanel(employeesModel);
+				CheckInOutPanel checkInOutPanel = new CheckInOutPanel(employeesModel, writer);
 				DailyReportPanel dailyReportPanel = new DailyReportPanel(employeesModel);
 				HistoryPanel historyPanel = new HistoryPanel(employeesModel);
 
@@ -102,16 +196,74 @@ final class Main {
 			// InvocationTargetException - never happens
 
 			DbInitializer.initialize();
-			Thread.sleep(getRandomDelay());
-			try (EmployeeDAO dao = new EmployeeDAO()) {
-				final EmployeeDTO[] employees = dao.selectAllEmployeesOrderedByName();
-				SwingUtilities.invokeLater(() -> employeesModel.setEmployees(employees));
+			try (AttendanceDAO dao = new AttendanceDAO()) {
+				dao.warmUpOpenShifts();
 			}
+			// moving the old months and exporting the history take a while, so the start does not wait for them;
+			// until the archive is in use the history is read from the DB
+			BackgroundExecutor.execute(() -> {
+				try {
+					try (AttendanceDAO dao = new AttendanceDAO()) {
+						// the attendance table keeps the last year only
+						dao.archiveMonthsBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(366));
+					}
+					AttendanceDAO.useArchive(openOrExportArchive());
+				} catch (Throwable err) {
+					reportFailureAndTerminate(err);
+				}
+			});
+			rollupMaintainer[0] = new RollupMaintainer(TimeUnit.MINUTES.toMillis(1), 1000);
+			Thread.sleep(getRandomDelay());
+			employeeCache[0] = new EmployeeCache(TimeUnit.SECONDS.toMillis(10), employees -> {
+				// sorting the name index of a large staff takes a while, so it is not done on EDT
+				EmployeeNameIndex nameIndex = new EmployeeNameIndex(employees);
+				SwingUtilities.invokeLater(() -> employeesModel.setEmployees(employees, nameIndex));
+			});
 		} catch (Throwable err) {
 			reportFailureAndTerminate(err);
 		}
 	}
 
+	/**
+	 * The history before the current month is read from the archive. It is re-exported once a month.
+	 * An export holds a connection throughout, so with no pool the other DAOs wait for it.
+	 * @return {@code null} if the archive is unavailable
+	 */
+	private static AttendanceArchive openOrExportArchive() {
+		Path file = Paths.get("database", "attendance.archive");
+		long before = LocalDate.now().withDayOfMonth(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		if (Files.exists(file)) {
+			try {
+				AttendanceArchive archive = AttendanceArchive.open(file);
+				if (archive.getExportedBefore() == before)
+					return archive;
+			} catch (IOException ex) {
+				new Logging(Main.class).warn(ex, "Failed to open the attendance archive; re-exporting it");
+			}
+		}
+		try (AttendanceDAO dao = new AttendanceDAO()) {
+			return AttendanceArchive.export(dao, file, before);
+		} catch (IOException ex) {
+			new Logging(Main.class).warn(ex, "Failed to export the attendance archive; proceeding without it");
+			return null;
+		}
+	}
+
+	/**
+	 * The check in/out events are journaled apart from the text log; see {@link da.AttendanceJournalTool}.
+	 * @return {@code null} if the journal is unavailable
+	 */
+	private static AttendanceJournal openJournal() {
+		try {
+			Path file = Paths.get("database", "attendance.journal");
+			Files.createDirectories(file.getParent());
+			return new AttendanceJournal(file, 100);
+		} catch (IOException ex) {
+			new Logging(Main.class).warn(ex, "Failed to open the attendance journal; proceeding without it");
+			return null;
+		}
+	}
+
 	static void reportFailureAndTerminate(Throwable err) {
 		new Logging(Main.class).error(err, "Unrecoverable error");
 		SwingUtilities.invokeLater(() -> {
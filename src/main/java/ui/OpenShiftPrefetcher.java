@@ -0,0 +1,124 @@
+package ui;
+
+import da.AttendanceDAO;
+import da.EmployeeDTO;
+
+import javax.swing.*;
+import java.util.BitSet;
+
+/**
+ * Keeps whether each employee has not checked out yet, so switching employees needs no DB round trip.
+ * The open shifts of all the employees are fetched at once each time the {@link EmployeesModel} changes
+ * and then periodically. Confined to EDT.
+ * @author danis.tazeev@gmail.com
+ */
+final class OpenShiftPrefetcher {
+	private final EmployeesModel model;
+	private final Timer timer;
+	/** The employees the {@link #openShifts} are keyed by; {@code null} until the first fetch is done */
+	private EmployeeDTO[] keyedBy;
+	private BitSet openShifts;
+	private Fetch inFlight;
+	/** Incremented by each local change, so a fetch launched before it does not undo the change */
+	private int generation;
+
+	/** @param refreshMillis how often to fetch the open shifts again; {@code 0} means on model changes only */
+	OpenShiftPrefetcher(EmployeesModel model, int refreshMillis) {
+		if (model == null)
+			throw new IllegalArgumentException("model = null");
+		if (refreshMillis < 0)
+			throw new IllegalArgumentException("refreshMillis must be greater or equal to 0");
+		this.model = model;
+		model.addChangeListener(e -> fetch());
+		timer = new Timer(refreshMillis, e -> fetch());
+		if (refreshMillis > 0)
+			timer.start();
+		if (model.hasEmployeesSet())
+			fetch();
+	}
+
+	private void fetch() {
+		if (!model.hasEmployeesSet())
+			return;
+		if (inFlight != null) {
+			if (inFlight.employees == model.getEmployees())
+				return; // its result is as fresh
+			inFlight.abort();
+		}
+		inFlight = new Fetch(model.getEmployees(), generation);
+		inFlight.start();
+	}
+
+	private final class Fetch extends BackgroundTask<BitSet, Void> {
+		private final EmployeeDTO[] employees;
+		private final int launchedAt;
+
+		private Fetch(EmployeeDTO[] employees, int launchedAt) {
+			this.employees = employees;
+			this.launchedAt = launchedAt;
+		}
+
+		@Override
+		protected BitSet doInBackground() throws Exception {
+			try (AttendanceDAO dao = open(AttendanceDAO::new)) {
+				return dao.selectOpenShiftsOf(employees);
+			}
+		}
+
+		@Override
+		protected void done() {
+			// an aborted fetch may finish after being replaced
+			if (inFlight != this)
+				return;
+			inFlight = null;
+			try {
+				if (!isCancelled() && launchedAt == generation) {
+					keyedBy = employees;
+					openShifts = get();
+				}
+			} catch (Throwable err) {
+				Main.reportFailureAndTerminate(err);
+			}
+		}
+	}
+
+	/** @return the index of the {@code employee} in {@link #keyedBy} or a negative value if it is not there */
+	private int indexOf(EmployeeDTO employee) {
+		if (keyedBy == null)
+			return -1;
+		int lo = 0;
+		int hi = keyedBy.length - 1;
+		while (lo <= hi) {
+			int mid = lo + hi >>> 1;
+			int c = keyedBy[mid].getName().compareTo(employee.getName());
+			if (c < 0)
+				lo = mid + 1;
+			else if (c > 0)
+				hi = mid - 1;
+			else {
+				// names are unique, but the name may have passed to another employee since the fetch,
+				// while the instance of an employee stays the same unless the employee changes
+				return keyedBy[mid] == employee ? mid : -1;
+			}
+		}
+		return -1;
+	}
+
+	/** @return {@code null} if unknown, i.e. the employee has not been fetched yet */
+	Boolean hasNotCheckedOutYet(EmployeeDTO employee) {
+		if (employee == null)
+			throw new IllegalArgumentException("employee = null");
+		int i = indexOf(employee);
+		return i < 0 ? null : openShifts.get(i);
+	}
+
+	/** Records a check in or out made by this application, so it is known before the next fetch */
+	void setHasNotCheckedOutYet(EmployeeDTO employee, boolean open) {
+		if (employee == null)
+			throw new IllegalArgumentException("employee = null");
+		generation++;
+		int i = indexOf(employee);
+		if (i >= 0)
+			openShifts.set(i, open);
+	}
+}
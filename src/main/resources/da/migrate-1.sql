@@ -0,0 +1 @@
+create index if not exists attendance_open_shift on attendance(employee_id, checked_out);
@@ -0,0 +1,4 @@
+create table attendance_log (
+	seq identity,
+	attendance_id bigint not null
+);
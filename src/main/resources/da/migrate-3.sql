@@ -0,0 +1,16 @@
+create table attendance_daily (
+	employee_id bigint not null,
+	day date not null,
+	first_in timestamp not null,
+	last_out timestamp not null,
+	worked_millis bigint not null,
+	shift_count int not null,
+	primary key(employee_id, day)
+);
+
+create table attendance_daily_state (
+	last_seq bigint not null
+);
+insert into attendance_daily_state(last_seq) values(0);
+
+insert into attendance_log(attendance_id) select id from attendance where checked_out is not null order by id;
@@ -0,0 +1,5 @@
+create table attendance_partition (
+	name varchar(32) not null primary key,
+	month_start timestamp not null,
+	max_checked_out timestamp not null
+);
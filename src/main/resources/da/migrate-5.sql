@@ -0,0 +1,6 @@
+create table employee_change (
+	seq identity,
+	employee_id bigint not null
+);
+
+create trigger employee_changed after insert, update, delete on employee for each row call "da.EmployeeChangeTrigger";
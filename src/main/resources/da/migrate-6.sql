@@ -0,0 +1 @@
+create index if not exists attendance_log_attendance on attendance_log(attendance_id);
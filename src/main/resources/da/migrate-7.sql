@@ -0,0 +1,2 @@
+drop index if exists index_8e;
+create index if not exists attendance_checked_out on attendance(checked_out);